@@ -10,7 +10,7 @@ const FaviconManager = ({ user }) => {
             document.getElementsByTagName('head')[0].appendChild(link);
 
             if (user?.organizationLogoUrl) {
-                link.href = user.organizationLogoUrl;
+                link.href = user.organizationLogoThumbnailUrl || user.organizationLogoUrl;
             } else if (user?.organizationName || user?.username) {
                 // Generate favicon from initials
                 const initials = getOrganizationInitials(user.organizationName || user.username);
@@ -110,7 +110,7 @@ const Navbar = ({ user, onLogout }) => {
 
   // Get organization logo props
   const logoProps = getOrganizationLogoProps(
-    user?.organizationLogoUrl,
+    user?.organizationLogoThumbnailUrl || user?.organizationLogoUrl,
     getOrganizationName()
   );
 
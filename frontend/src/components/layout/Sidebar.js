@@ -396,7 +396,7 @@ const Sidebar = ({ user, onLogout, isCollapsed, toggleSidebar, onUserUpdate }) =
                 >
                     {user?.profileImageUrl || user?.avatarUrl ? (
                         <img
-                            src={user.profileImageUrl || user.avatarUrl}
+                            src={user.profileImageThumbnailUrl || user.profileImageUrl || user.avatarUrl}
                             alt="Profile"
                             style={{
                                 width: '20px',
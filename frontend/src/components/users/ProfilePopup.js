@@ -66,7 +66,8 @@ const ProfilePopup = ({ user, isOpen, onClose, onUserUpdate, triggerRef }) => {
               licenseNumber: userData.licenseNumber || '',
               portfolioLink: userData.portfolioLink || ''
             });
-            setProfileImageUrl(userData.profileImageUrl || null);
+            // 256px copy for the 80px avatar; WebP photos have none and use the original
+            setProfileImageUrl(userData.profileImageAvatarUrl || userData.profileImageUrl || null);
           }
         } catch (error) {
           console.error('Failed to fetch user data:', error);
@@ -247,7 +248,7 @@ const ProfilePopup = ({ user, isOpen, onClose, onUserUpdate, triggerRef }) => {
                 >
                   {profileImageUrl || currentUser?.profileImageUrl || currentUser?.avatarUrl ? (
                     <img
-                      src={profileImageUrl || currentUser.profileImageUrl || currentUser.avatarUrl}
+                      src={profileImageUrl || currentUser.profileImageAvatarUrl || currentUser.profileImageUrl || currentUser.avatarUrl}
                       alt="Profile"
                     />
                   ) : (
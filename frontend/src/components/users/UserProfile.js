@@ -99,7 +99,7 @@ const UserProfile = ({ user, onUserUpdate }) => {
             licenseNumber: userData.licenseNumber || '',
             portfolioLink: userData.portfolioLink || ''
           });
-          setProfileImageUrl(userData.profileImageUrl || null);
+          setProfileImageUrl(userData.profileImageAvatarUrl || userData.profileImageUrl || null);
         }
       } catch (error) {
         console.error('Failed to fetch user data:', error);
@@ -128,7 +128,7 @@ const UserProfile = ({ user, onUserUpdate }) => {
         portfolioLink: currentUser.portfolioLink || ''
       });
       // Set profile image URL from user data
-      setProfileImageUrl(currentUser.profileImageUrl || null);
+      setProfileImageUrl(currentUser.profileImageAvatarUrl || currentUser.profileImageUrl || null);
     }
   }, [currentUser]);
 
@@ -1,25 +1,213 @@
 package org.example.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Configuration for async operations and scheduling.
- * Enables @Async for non-blocking email sending.
+ * Enables @Async and @Scheduled (token cleanup, email outbox dispatch).
+ *
+ * Every workload gets its own bounded, named pool with an explicit queue-full policy, and every
+ * pool copies the caller's MDC into its threads. Spring Boot Actuator publishes executor.* metrics
+ * for each ThreadPoolTaskExecutor bean, tagged with the bean name (e.g. name=mailExecutor).
  */
 @Configuration
 @EnableAsync
 @EnableScheduling
-public class AsyncConfig {
-    // Uses default SimpleAsyncTaskExecutor
-    // For production, you might want to configure a custom ThreadPoolTaskExecutor
-}
+public class AsyncConfig implements AsyncConfigurer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncConfig.class);
+
+    @Value("${app.async.mail-threads:2}")
+    private int mailThreads;
+
+    @Value("${app.async.mail-queue-capacity:500}")
+    private int mailQueueCapacity;
+
+    @Value("${app.async.image-threads:2}")
+    private int imageThreads;
+
+    @Value("${app.async.image-queue-capacity:100}")
+    private int imageQueueCapacity;
+
+    @Value("${app.async.archive-prefetch-threads:8}")
+    private int archivePrefetchThreads;
 
+    @Value("${app.async.stream-threads:32}")
+    private int streamThreads;
 
+    @Value("${app.async.stream-queue-capacity:50}")
+    private int streamQueueCapacity;
 
+    @Value("${app.billing-run.pdf-threads:4}")
+    private int billingRunPdfThreads;
 
+    @Value("${app.pdf.render-threads:4}")
+    private int pdfRenderThreads;
 
+    @Value("${app.pdf.render-queue-capacity:20}")
+    private int pdfRenderQueueCapacity;
 
+    /**
+     * Default executor for @Async methods. Work here is slow but light I/O, so a small pool
+     * with a deep queue is enough; when the queue is full the caller runs the task itself
+     * rather than dropping it. Application emails go through the email outbox instead.
+     */
+    @Bean(name = "mailExecutor")
+    public ThreadPoolTaskExecutor mailExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(mailThreads);
+        executor.setMaxPoolSize(mailThreads);
+        executor.setQueueCapacity(mailQueueCapacity);
+        executor.setThreadNamePrefix("mail-");
+        executor.setTaskDecorator(new MdcTaskDecorator());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
 
+    @Override
+    public Executor getAsyncExecutor() {
+        return mailExecutor();
+    }
 
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return (ex, method, params) ->
+                logger.error("Async method {}.{} failed: {}", method.getDeclaringClass().getSimpleName(),
+                        method.getName(), ex.getMessage(), ex);
+    }
+
+    /**
+     * Generates image derivatives (thumbnails, avatars, PDF logos) after upload, off the request
+     * thread. Uploads are rare and small, so a couple of threads suffice; when the queue is full
+     * the uploading request thread does the resizing itself.
+     */
+    @Bean(name = "imageExecutor")
+    public ThreadPoolTaskExecutor imageExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(imageThreads);
+        executor.setMaxPoolSize(imageThreads);
+        executor.setQueueCapacity(imageQueueCapacity);
+        executor.setThreadNamePrefix("image-");
+        executor.setTaskDecorator(new MdcTaskDecorator());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Runs Spring MVC async work: StreamingResponseBody downloads (invoice and payslip PDFs, payslip
+     * ZIPs) and the attachment archive WebAsyncTask. Defining our own executors makes Spring Boot
+     * skip its applicationTaskExecutor, and MVC would then fall back to one new thread per request,
+     * so the bean is declared here under that name. When threads and queue are full the request fails
+     * instead of starting another thread.
+     */
+    @Bean(name = "applicationTaskExecutor")
+    public ThreadPoolTaskExecutor applicationTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(streamThreads);
+        executor.setMaxPoolSize(streamThreads);
+        executor.setQueueCapacity(streamQueueCapacity);
+        executor.setThreadNamePrefix("mvc-async-");
+        executor.setTaskDecorator(new MdcTaskDecorator());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Reads the next files of an attachment ZIP download from storage while the current one is
+     * written. There is no queue: a task either starts at once or is rejected and the download
+     * reads that file itself, so a download never waits on prefetches queued behind other downloads.
+     */
+    @Bean(name = "archivePrefetchExecutor")
+    public ThreadPoolTaskExecutor archivePrefetchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(archivePrefetchThreads);
+        executor.setMaxPoolSize(archivePrefetchThreads);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("archive-prefetch-");
+        executor.setTaskDecorator(new MdcTaskDecorator());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Runs billing-run jobs in the background so the request thread returns immediately.
+     * Only a handful of runs can be queued; each run is a long-lived coordinator.
+     */
+    @Bean(name = "billingRunExecutor")
+    public ThreadPoolTaskExecutor billingRunExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(10);
+        executor.setThreadNamePrefix("billing-run-");
+        executor.setTaskDecorator(new MdcTaskDecorator());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Bounded worker pool for rendering invoice PDFs during a billing run.
+     * When the queue is full the submitting billing-run thread renders the PDF itself,
+     * which throttles the run instead of dropping work.
+     */
+    @Bean(name = "billingRunPdfExecutor")
+    public ThreadPoolTaskExecutor billingRunPdfExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(billingRunPdfThreads);
+        executor.setMaxPoolSize(billingRunPdfThreads);
+        executor.setQueueCapacity(billingRunPdfThreads * 4);
+        executor.setThreadNamePrefix("billing-pdf-");
+        executor.setTaskDecorator(new MdcTaskDecorator());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Bounded pool for interactive PDF rendering (downloads and email attachments), so CPU-heavy
+     * iText layout cannot take over the Tomcat request threads. A full queue rejects the task;
+     * PdfRenderingService turns that into a 503.
+     */
+    @Bean(name = "pdfRenderExecutor")
+    public ThreadPoolTaskExecutor pdfRenderExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(pdfRenderThreads);
+        executor.setMaxPoolSize(pdfRenderThreads);
+        executor.setQueueCapacity(pdfRenderQueueCapacity);
+        executor.setThreadNamePrefix("pdf-render-");
+        executor.setTaskDecorator(new MdcTaskDecorator());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Attachments uploaded before drawing revisions existed are standalone files: revision 1 and
+ * latest, so they appear in the drawing register.
+ */
+@Component
+@Order(5)
+public class AttachmentRevisionBackfill implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentRevisionBackfill.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        try {
+            int updated = jdbcTemplate.update(
+                    "UPDATE project_attachments SET revision = 1, is_latest = TRUE WHERE is_latest IS NULL");
+            if (updated > 0) {
+                logger.info("Backfilled revision data for {} attachments", updated);
+            }
+        } catch (Exception e) {
+            logger.error("Error backfilling attachment revisions: {}", e.getMessage(), e);
+            // Don't fail the application startup, just log the error
+        }
+    }
+}
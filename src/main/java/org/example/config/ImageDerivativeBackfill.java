@@ -0,0 +1,61 @@
+package org.example.config;
+
+import org.example.service.ImageDerivativeService;
+import org.example.service.ImageDerivativeService.Variant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Profile photos and organization logos uploaded before derivatives existed have none, yet their
+ * derivative URLs are handed out. Generates the missing ones on the image pool, so those URLs stop
+ * falling back to the original in FileController and LogoImageCache.
+ */
+@Component
+@Order(7)
+public class ImageDerivativeBackfill implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageDerivativeBackfill.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        try {
+            int profileImages = backfill(
+                    "SELECT DISTINCT profile_image_url FROM users WHERE profile_image_url LIKE '/api/files/%'",
+                    Variant.THUMBNAIL, Variant.AVATAR);
+            int logos = backfill(
+                    "SELECT DISTINCT logo_url FROM organizations WHERE logo_url LIKE '/api/files/%'",
+                    Variant.THUMBNAIL, Variant.PDF_LOGO);
+            if (profileImages > 0 || logos > 0) {
+                logger.info("Generating derivatives for {} profile images and {} organization logos", profileImages, logos);
+            }
+        } catch (Exception e) {
+            logger.error("Error backfilling image derivatives: {}", e.getMessage(), e);
+            // Don't fail the application startup, just log the error
+        }
+    }
+
+    private int backfill(String query, Variant... variants) {
+        int count = 0;
+        for (String url : jdbcTemplate.queryForList(query, String.class)) {
+            if (!imageDerivativeService.hasDerivatives(url, variants)) {
+                imageDerivativeService.generateDerivatives(url, variants);
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.config;
+
+import org.example.service.WorkingDayCalendarService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Payslips generated before the working-day count was saved get it from the calendar as it is
+ * now, once. From then on their printed figures no longer move when holidays are edited.
+ */
+@Component
+@Order(6)
+public class PayslipWorkingDaysBackfill implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayslipWorkingDaysBackfill.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private WorkingDayCalendarService workingDayCalendarService;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        try {
+            List<Object[]> updates = new ArrayList<>();
+            jdbcTemplate.query(
+                    "SELECT id, organization_id, pay_period_start, pay_period_end FROM payslips " +
+                    "WHERE working_days_in_period IS NULL",
+                    rs -> {
+                        long workingDays = workingDayCalendarService.countWorkingDays(rs.getLong("organization_id"),
+                                rs.getDate("pay_period_start").toLocalDate(), rs.getDate("pay_period_end").toLocalDate());
+                        updates.add(new Object[]{workingDays, rs.getLong("id")});
+                    });
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate("UPDATE payslips SET working_days_in_period = ? WHERE id = ?", updates);
+                logger.info("Backfilled working days for {} payslips", updates.size());
+            }
+        } catch (Exception e) {
+            logger.error("Error backfilling payslip working days: {}", e.getMessage(), e);
+            // Don't fail the application startup, just log the error
+        }
+    }
+}
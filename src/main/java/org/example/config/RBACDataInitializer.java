@@ -4,6 +4,7 @@ import org.example.models.Permission;
 import org.example.models.Role;
 import org.example.repository.PermissionRepository;
 import org.example.repository.RoleRepository;
+import org.example.service.PermissionRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,6 +28,9 @@ public class RBACDataInitializer implements CommandLineRunner {
     @Autowired
     private RoleRepository roleRepository;
 
+    @Autowired
+    private PermissionRegistry permissionRegistry;
+
     @Override
     @Transactional
     public void run(String... args) throws Exception {
@@ -37,6 +41,7 @@ public class RBACDataInitializer implements CommandLineRunner {
 
         // Create Roles with Permissions
         createRolesIfNotExist();
+        permissionRegistry.invalidate();
 
         logger.info("RBAC data initialization complete.");
     }
@@ -29,6 +29,7 @@ import org.example.models.User;
 import org.example.service.AuthService;
 import org.example.service.AuthService.PasswordResetResult;
 import org.example.service.AuthService.PasswordResetValidation;
+import org.example.service.ImageDerivativeService;
 import org.example.service.UserService;
 
 @RestController
@@ -135,12 +136,16 @@ public class ApiAuthController {
                 userInfo.put("organizationId", user.getOrganization() != null ? user.getOrganization().getId() : null);
                 userInfo.put("organizationName", user.getOrganization() != null ? user.getOrganization().getName() : null);
                 userInfo.put("organizationLogoUrl", user.getOrganization() != null ? user.getOrganization().getLogoUrl() : null);
+                userInfo.put("organizationLogoThumbnailUrl", user.getOrganization() != null
+                        ? ImageDerivativeService.derivativeUrl(user.getOrganization().getLogoUrl(), ImageDerivativeService.Variant.THUMBNAIL) : null);
                 userInfo.put("designation", user.getDesignation());
                 userInfo.put("specialization", user.getSpecialization());
                 userInfo.put("licenseNumber", user.getLicenseNumber());
                 userInfo.put("portfolioLink", user.getPortfolioLink());
                 userInfo.put("bio", user.getBio());
                 userInfo.put("profileImageUrl", user.getProfileImageUrl());
+                userInfo.put("profileImageAvatarUrl", ImageDerivativeService.derivativeUrl(user.getProfileImageUrl(), ImageDerivativeService.Variant.AVATAR));
+                userInfo.put("profileImageThumbnailUrl", ImageDerivativeService.derivativeUrl(user.getProfileImageUrl(), ImageDerivativeService.Variant.THUMBNAIL));
                 userInfo.put("createdAt", user.getCreatedAt());
                 
                 // Add roles and permissions
@@ -1,18 +1,31 @@
 package org.example.controller;
 
 import org.example.service.FileStorageService;
+import org.example.service.ImageDerivativeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -27,6 +40,8 @@ public class FileController {
 
     private static final Logger logger = LoggerFactory.getLogger(FileController.class);
 
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
     private final FileStorageService fileStorageService;
 
     @Autowired
@@ -37,44 +52,85 @@ public class FileController {
     /**
      * Serves a file from storage.
      * Handles paths like: /api/files/profile-images/2/user_4_abc123.png
-     * 
+     *
+     * The file is streamed rather than loaded into memory. Single-range requests (Range: bytes=...)
+     * get a 206 with only the requested bytes, and If-None-Match against the file's ETag gets a 304.
+     * Local files are copied with FileChannel.transferTo; S3 files use a ranged GET.
+     *
      * @param request The HTTP request to extract the full path
      * @return The file content with appropriate headers
      */
     @GetMapping("/**")
-    public ResponseEntity<byte[]> serveFile(jakarta.servlet.http.HttpServletRequest request) {
+    public ResponseEntity<StreamingResponseBody> serveFile(jakarta.servlet.http.HttpServletRequest request) {
+        // The fileUrl is the full path including /api/files/
+        String requestedUrl = request.getRequestURI();
+
         try {
-            // Get the full path after /api/files/
-            String fullPath = request.getRequestURI();
-            logger.info("Serving file request: {}", fullPath);
-            
-            // The fileUrl is the full path including /api/files/
-            String fileUrl = fullPath;
-
-            if (!fileStorageService.fileExists(fileUrl)) {
-                logger.warn("File not found: {}", fileUrl);
-                return ResponseEntity.notFound().build();
+            String fileUrl = requestedUrl;
+            FileStorageService.FileMetadata metadata;
+            boolean derivativePending = false;
+            try {
+                metadata = fileStorageService.getFileMetadata(fileUrl);
+            } catch (FileStorageService.FileStorageException e) {
+                // An image derivative that has not been generated (or cannot be): serve the original
+                String originalUrl = ImageDerivativeService.originalUrl(requestedUrl);
+                if (originalUrl == null) {
+                    throw e;
+                }
+                fileUrl = originalUrl;
+                metadata = fileStorageService.getFileMetadata(fileUrl);
+                derivativePending = true;
             }
-
-            byte[] fileBytes = fileStorageService.getFileBytes(fileUrl);
-            String contentType = fileStorageService.getContentType(fileUrl);
-
-            logger.info("Serving file: {} ({} bytes, type: {})", fileUrl, fileBytes.length, contentType);
+            long fileLength = metadata.contentLength();
 
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(contentType));
-            headers.setCacheControl(CacheControl.maxAge(7, TimeUnit.DAYS).cachePublic());
-            headers.setContentLength(fileBytes.length);
-            
+            headers.setContentType(MediaType.parseMediaType(metadata.contentType()));
+            // Keep a stand-in original out of caches so the derivative is picked up once it exists
+            headers.setCacheControl(derivativePending
+                    ? CacheControl.maxAge(1, TimeUnit.MINUTES).cachePublic()
+                    : CacheControl.maxAge(7, TimeUnit.DAYS).cachePublic());
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (metadata.eTag() != null) {
+                headers.setETag(metadata.eTag());
+            }
+            if (metadata.lastModified() != null) {
+                headers.setLastModified(metadata.lastModified());
+            }
+
             // CORS headers for CloudFront
             headers.setAccessControlAllowOrigin("*");
             headers.setAccessControlAllowMethods(Arrays.asList(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS));
             headers.setAccessControlMaxAge(3600L);
 
-            logger.info("Returning file: {} bytes, Content-Type: {}", fileBytes.length, contentType);
-            return new ResponseEntity<>(fileBytes, headers, HttpStatus.OK);
+            if (matchesETag(request.getHeader(HttpHeaders.IF_NONE_MATCH), metadata.eTag())) {
+                return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+            }
+
+            HttpRange range = resolveRange(request, metadata);
+            long start = 0;
+            long end = fileLength - 1;
+            if (range != null) {
+                try {
+                    start = range.getRangeStart(fileLength);
+                    end = range.getRangeEnd(fileLength);
+                } catch (IllegalArgumentException e) {
+                    headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + fileLength);
+                    return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                }
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileLength);
+            }
+            headers.setContentLength(end - start + 1);
+
+            logger.debug("Serving file: {} (bytes {}-{} of {}, type: {})",
+                    fileUrl, start, end, fileLength, metadata.contentType());
+
+            String servedUrl = fileUrl;
+            long rangeStart = start;
+            long rangeEnd = end;
+            StreamingResponseBody body = out -> writeRange(servedUrl, rangeStart, rangeEnd, out);
+            return new ResponseEntity<>(body, headers, range != null ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK);
         } catch (FileStorageService.FileStorageException e) {
-            logger.error("Error serving file: {}", e.getMessage());
+            logger.warn("Error serving file {}: {}", requestedUrl, e.getMessage());
             return ResponseEntity.notFound().build();
         } catch (Exception e) {
             logger.error("Unexpected error serving file", e);
@@ -82,6 +138,100 @@ public class FileController {
         }
     }
 
+    /**
+     * The single byte range to serve, or null to serve the whole file. Malformed or multi-range
+     * headers, and If-Range validators that no longer match, fall back to the whole file.
+     */
+    private HttpRange resolveRange(jakarta.servlet.http.HttpServletRequest request,
+                                   FileStorageService.FileMetadata metadata) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || metadata.contentLength() == 0) {
+            return null;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(metadata.eTag())) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        String opaqueTag = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeRange(String fileUrl, long start, long end, OutputStream out) throws IOException {
+        long remaining = end - start + 1;
+
+        Optional<Path> localPath = fileStorageService.getLocalPath(fileUrl);
+        if (localPath.isPresent()) {
+            try (FileChannel channel = FileChannel.open(localPath.get(), StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(out);
+                long position = start;
+                while (remaining > 0) {
+                    long transferred = channel.transferTo(position, remaining, target);
+                    if (transferred <= 0) {
+                        break; // File was truncated while serving
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+            }
+            return;
+        }
+
+        try (InputStream in = fileStorageService.getFileStream(fileUrl, start, end)) {
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    /**
+     * Receives one part of a multipart upload for storage backends that cannot take parts directly
+     * (local storage). The part URL handed out by the storage service points here; the upload ID is
+     * the credential, as with an S3 presigned URL.
+     */
+    @PutMapping("/multipart/{uploadId}/parts/{partNumber}")
+    public ResponseEntity<Void> uploadPart(@PathVariable String uploadId,
+                                           @PathVariable int partNumber,
+                                           @RequestParam("path") String storagePath,
+                                           jakarta.servlet.http.HttpServletRequest request) {
+        try (InputStream content = request.getInputStream()) {
+            String eTag = fileStorageService.storeUploadPart(storagePath, uploadId, partNumber,
+                    content, request.getContentLengthLong());
+            HttpHeaders headers = new HttpHeaders();
+            headers.setETag(eTag);
+            headers.setAccessControlExposeHeaders(List.of(HttpHeaders.ETAG));
+            return new ResponseEntity<>(headers, HttpStatus.OK);
+        } catch (FileStorageService.FileStorageException e) {
+            logger.warn("Error storing part {} of upload {}: {}", partNumber, uploadId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (UnsupportedOperationException e) {
+            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+        } catch (IOException e) {
+            logger.warn("Upload of part {} of {} interrupted: {}", partNumber, uploadId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Generates a presigned URL for uploading a file directly to storage.
      */
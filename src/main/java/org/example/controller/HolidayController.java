@@ -0,0 +1,119 @@
+package org.example.controller;
+
+import org.example.models.OrganizationHoliday;
+import org.example.models.User;
+import org.example.service.UserService;
+import org.example.service.WorkingDayCalendarService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Organization holidays, which are excluded from working days in payroll and utilization.
+ */
+@RestController
+@RequestMapping("/api/holidays")
+public class HolidayController {
+
+    private static final Logger logger = LoggerFactory.getLogger(HolidayController.class);
+
+    private final WorkingDayCalendarService workingDayCalendarService;
+    private final UserService userService;
+
+    @Autowired
+    public HolidayController(WorkingDayCalendarService workingDayCalendarService, UserService userService) {
+        this.workingDayCalendarService = workingDayCalendarService;
+        this.userService = userService;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getHolidays(@RequestParam(required = false) Integer year) {
+        Map<String, Object> response = new HashMap<>();
+        User currentUser = getCurrentUser();
+        int calendarYear = year != null ? year : LocalDate.now().getYear();
+
+        List<OrganizationHoliday> holidays = workingDayCalendarService.getHolidays(
+                currentUser.getOrganization().getId(), calendarYear);
+
+        response.put("success", true);
+        response.put("year", calendarYear);
+        response.put("holidays", holidays);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping
+    @PreAuthorize("hasRole('ADMIN') or hasRole('HR')")
+    public ResponseEntity<Map<String, Object>> addHoliday(@RequestBody Map<String, Object> requestData) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            User currentUser = getCurrentUser();
+            LocalDate date = requestData.get("date") != null ? LocalDate.parse(requestData.get("date").toString()) : null;
+            String name = requestData.get("name") != null ? requestData.get("name").toString() : null;
+
+            OrganizationHoliday holiday = workingDayCalendarService.addHoliday(
+                    currentUser.getOrganization().getId(), date, name);
+
+            response.put("success", true);
+            response.put("message", "Holiday added");
+            response.put("holiday", holiday);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (Exception e) {
+            logger.error("Error adding holiday", e);
+            response.put("success", false);
+            response.put("message", "Failed to add holiday: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('HR')")
+    public ResponseEntity<Map<String, Object>> deleteHoliday(@PathVariable Long id) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            User currentUser = getCurrentUser();
+            workingDayCalendarService.deleteHoliday(currentUser.getOrganization().getId(), id);
+
+            response.put("success", true);
+            response.put("message", "Holiday deleted");
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        } catch (Exception e) {
+            logger.error("Error deleting holiday", e);
+            response.put("success", false);
+            response.put("message", "Failed to delete holiday: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    private User getCurrentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String username = authentication.getName();
+        return userService.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+}
@@ -1,15 +1,17 @@
 package org.example.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.example.models.Invoice;
 import org.example.models.InvoiceItem;
 import org.example.models.User;
 import org.example.models.enums.InvoiceStatus;
 import org.example.models.enums.InvoiceItemType;
 import org.example.dto.InvoiceResponseDto;
-import org.example.service.EmailService;
+import org.example.service.BillingRunService;
 import org.example.service.InvoiceService;
 import org.example.service.InvoiceTemplateService;
-import org.example.service.PdfService;
+import org.example.service.PdfCacheService;
+import org.example.service.PdfRenderingService;
 import org.example.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,14 +27,14 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
-import java.text.NumberFormat;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 @RestController
@@ -44,18 +46,19 @@ public class InvoiceController {
 
     private final InvoiceService invoiceService;
     private final InvoiceTemplateService templateService;
-    private final PdfService pdfService;
+    private final PdfCacheService pdfCacheService;
     private final UserService userService;
-    private final EmailService emailService;
+    private final BillingRunService billingRunService;
 
     @Autowired
     public InvoiceController(InvoiceService invoiceService, InvoiceTemplateService templateService, 
-                           PdfService pdfService, UserService userService, EmailService emailService) {
+                           PdfCacheService pdfCacheService, UserService userService,
+                           BillingRunService billingRunService) {
         this.invoiceService = invoiceService;
         this.templateService = templateService;
-        this.pdfService = pdfService;
+        this.pdfCacheService = pdfCacheService;
         this.userService = userService;
-        this.emailService = emailService;
+        this.billingRunService = billingRunService;
     }
 
     // Get all invoices for the user's organization
@@ -288,30 +291,25 @@ public class InvoiceController {
                 return ResponseEntity.badRequest().body(response);
             }
 
-            // Update invoice status to SENT
-            Invoice updatedInvoice = invoiceService.updateInvoiceStatus(id, organizationId, InvoiceStatus.SENT);
-            
-            // Generate PDF
-            byte[] pdfBytes = pdfService.generateInvoicePdf(updatedInvoice);
-            
-            // Format total amount for email
-            NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("en", "IN"));
-            String totalAmount = currencyFormatter.format(updatedInvoice.getTotalAmount());
-            
-            // Send email with PDF attachment
-            emailService.sendInvoiceEmail(
-                updatedInvoice.getClientEmail(),
-                updatedInvoice.getClientName(),
-                updatedInvoice.getInvoiceNumber(),
-                totalAmount,
-                pdfBytes
-            );
+            // Generate PDF as it will look once sent, before changing the status,
+            // so a busy renderer leaves the invoice untouched
+            invoice.setStatus(InvoiceStatus.SENT);
+            byte[] pdfBytes = pdfCacheService.getInvoicePdf(invoice);
+
+            // Update invoice status to SENT and queue the email with the PDF attached
+            Invoice updatedInvoice = invoiceService.sendInvoice(id, organizationId, pdfBytes);
             
             response.put("success", true);
-            response.put("message", "Invoice has been sent to " + updatedInvoice.getClientEmail() + " successfully");
+            response.put("message", "Invoice email to " + updatedInvoice.getClientEmail() + " has been queued for delivery");
             response.put("invoice", updatedInvoice);
             
             return ResponseEntity.ok(response);
+        } catch (PdfRenderingService.RenderingBusyException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(response);
         } catch (IllegalArgumentException e) {
             logger.warn("Invoice not found or invalid: {}", e.getMessage());
             response.put("success", false);
@@ -397,22 +395,26 @@ public class InvoiceController {
     // Generate and download PDF
     @GetMapping("/{id}/pdf")
     @PreAuthorize("hasAuthority('invoices.view')")
-    public ResponseEntity<byte[]> generateInvoicePdf(@PathVariable Long id) {
+    public ResponseEntity<StreamingResponseBody> generateInvoicePdf(@PathVariable Long id, HttpServletRequest request) {
         try {
             User currentUser = getCurrentUser();
             Long organizationId = currentUser.getOrganization().getId();
 
             Invoice invoice = invoiceService.findInvoiceByIdAndOrganization(id, organizationId);
-            byte[] pdfBytes = pdfService.generateInvoicePdf(invoice);
+            PdfCacheService.RenderedPdf pdf = pdfCacheService.prepareInvoicePdf(invoice);
 
+            // No Content-Length: the PDF is streamed to the client with chunked transfer encoding
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_PDF);
             headers.setContentDispositionFormData("attachment", invoice.getInvoiceNumber() + ".pdf");
-            headers.setContentLength(pdfBytes.length);
 
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(pdfBytes);
+                    .body(pdf.toResponseBody(request));
+        } catch (PdfRenderingService.RenderingBusyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .build();
         } catch (IllegalArgumentException e) {
             logger.warn("Invoice not found for PDF generation: {}", e.getMessage());
             return ResponseEntity.notFound().build();
@@ -495,6 +497,89 @@ public class InvoiceController {
         }
     }
 
+    // Start a month-end billing run for all billable active projects
+    @PostMapping("/billing-runs")
+    @PreAuthorize("hasAuthority('invoices.create')")
+    public ResponseEntity<Map<String, Object>> startBillingRun(@RequestBody(required = false) Map<String, Object> requestData) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            User currentUser = getCurrentUser();
+            Long organizationId = currentUser.getOrganization().getId();
+            if (requestData == null) {
+                requestData = new HashMap<>();
+            }
+
+            LocalDate issueDate = null;
+            if (requestData.get("issueDate") != null && !requestData.get("issueDate").toString().isEmpty()) {
+                issueDate = LocalDate.parse(requestData.get("issueDate").toString());
+            }
+            LocalDate dueDate = null;
+            if (requestData.get("dueDate") != null && !requestData.get("dueDate").toString().isEmpty()) {
+                dueDate = LocalDate.parse(requestData.get("dueDate").toString());
+            }
+
+            Long templateId = null;
+            if (requestData.get("templateId") != null && !requestData.get("templateId").toString().isEmpty()) {
+                templateId = Long.parseLong(requestData.get("templateId").toString());
+            }
+            // If no template specified, use default
+            if (templateId == null) {
+                templateId = templateService.getDefaultTemplate(organizationId)
+                    .map(t -> t.getId())
+                    .orElse(null);
+            }
+
+            BillingRunService.BillingRun run = billingRunService.startBillingRun(
+                organizationId, currentUser.getId(), issueDate, dueDate, templateId);
+
+            response.put("success", true);
+            response.put("message", "Billing run started");
+            response.put("jobId", run.getJobId());
+            response.put("billingRun", run);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            logger.warn("Invalid billing run request: {}", e.getMessage());
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            logger.error("Error starting billing run", e);
+            response.put("success", false);
+            response.put("message", "Failed to start billing run: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    // Get progress of a billing run
+    @GetMapping("/billing-runs/{jobId}")
+    @PreAuthorize("hasAuthority('invoices.create')")
+    public ResponseEntity<Map<String, Object>> getBillingRun(@PathVariable String jobId) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            User currentUser = getCurrentUser();
+            Long organizationId = currentUser.getOrganization().getId();
+
+            response.put("success", true);
+            response.put("billingRun", billingRunService.getBillingRun(jobId, organizationId));
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        } catch (Exception e) {
+            logger.error("Error fetching billing run", e);
+            response.put("success", false);
+            response.put("message", "Failed to fetch billing run: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
     // Helper method to get current user
     private User getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -1,6 +1,7 @@
 package org.example.controller;
 
 import org.example.models.InvoiceTemplate;
+import org.example.service.InvoiceTemplateRenderer;
 import org.example.service.InvoiceTemplateService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -46,17 +47,23 @@ public class InvoiceTemplateController {
 
     @PostMapping
     @PreAuthorize("hasRole('ROLE_ADMIN')")
-    public ResponseEntity<InvoiceTemplate> createTemplate(@RequestBody InvoiceTemplate template) {
-        InvoiceTemplate created = templateService.createTemplate(template);
-        return ResponseEntity.ok(created);
+    public ResponseEntity<?> createTemplate(@RequestBody InvoiceTemplate template) {
+        try {
+            InvoiceTemplate created = templateService.createTemplate(template);
+            return ResponseEntity.ok(created);
+        } catch (InvoiceTemplateRenderer.InvalidTemplateException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
     }
 
     @PutMapping("/{id}")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
-    public ResponseEntity<InvoiceTemplate> updateTemplate(@PathVariable Long id, @RequestBody InvoiceTemplate template) {
+    public ResponseEntity<?> updateTemplate(@PathVariable Long id, @RequestBody InvoiceTemplate template) {
         try {
             InvoiceTemplate updated = templateService.updateTemplate(id, template);
             return ResponseEntity.ok(updated);
+        } catch (InvoiceTemplateRenderer.InvalidTemplateException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.notFound().build();
         }
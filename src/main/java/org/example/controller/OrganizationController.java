@@ -5,6 +5,8 @@ import org.example.models.User;
 import org.example.repository.OrganizationRepository;
 import org.example.service.FileStoragePathBuilder;
 import org.example.service.FileStorageService;
+import org.example.service.ImageDerivativeService;
+import org.example.service.LogoImageCache;
 import org.example.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +37,12 @@ public class OrganizationController {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private LogoImageCache logoImageCache;
+
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+
     @Value("${app.storage.allowed-image-types:image/jpeg,image/png,image/gif,image/webp}")
     private String allowedImageTypes;
 
@@ -105,7 +113,10 @@ public class OrganizationController {
             if (updatedOrg.getWebsite() != null) organization.setWebsite(updatedOrg.getWebsite());
             
             // Update Indian invoice fields
-            if (updatedOrg.getLogoUrl() != null) organization.setLogoUrl(updatedOrg.getLogoUrl());
+            if (updatedOrg.getLogoUrl() != null) {
+                logoImageCache.invalidate(organization.getLogoUrl());
+                organization.setLogoUrl(updatedOrg.getLogoUrl());
+            }
             if (updatedOrg.getGstin() != null) organization.setGstin(updatedOrg.getGstin());
             if (updatedOrg.getPan() != null) organization.setPan(updatedOrg.getPan());
             if (updatedOrg.getCoaRegNumber() != null) organization.setCoaRegNumber(updatedOrg.getCoaRegNumber());
@@ -183,8 +194,10 @@ public class OrganizationController {
 
             // Delete old logo image if exists
             if (organization.getLogoUrl() != null && !organization.getLogoUrl().isEmpty()) {
+                logoImageCache.invalidate(organization.getLogoUrl());
                 try {
                     fileStorageService.deleteFile(organization.getLogoUrl());
+                    imageDerivativeService.deleteDerivatives(organization.getLogoUrl());
                     logger.info("Deleted old logo image for organization: {}", organization.getId());
                 } catch (Exception e) {
                     // Log but don't fail if old image deletion fails
@@ -199,6 +212,8 @@ public class OrganizationController {
             String filename = "logo";
 
             String imageUrl = fileStorageService.storeFile(file, directory, filename);
+            imageDerivativeService.generateDerivatives(imageUrl, file.getBytes(),
+                    ImageDerivativeService.Variant.THUMBNAIL, ImageDerivativeService.Variant.PDF_LOGO);
 
             // Update organization with new logo URL
             organization.setLogoUrl(imageUrl);
@@ -210,6 +225,7 @@ public class OrganizationController {
             successResponse.put("success", true);
             successResponse.put("message", "Organization logo uploaded successfully");
             successResponse.put("imageUrl", imageUrl);
+            successResponse.put("thumbnailUrl", ImageDerivativeService.derivativeUrl(imageUrl, ImageDerivativeService.Variant.THUMBNAIL));
             return ResponseEntity.ok(successResponse);
 
         } catch (FileStorageService.FileStorageException e) {
@@ -262,8 +278,10 @@ public class OrganizationController {
             }
 
             // Delete the file
+            logoImageCache.invalidate(organization.getLogoUrl());
             try {
                 fileStorageService.deleteFile(organization.getLogoUrl());
+                imageDerivativeService.deleteDerivatives(organization.getLogoUrl());
             } catch (Exception e) {
                 logger.warn("Failed to delete logo file: {}", e.getMessage());
             }
@@ -1,14 +1,18 @@
 package org.example.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.example.models.Payslip;
 import org.example.models.User;
 import org.example.models.enums.PayslipStatus;
+import org.example.service.PayslipExportService;
 import org.example.service.PayslipService;
-import org.example.service.PdfService;
+import org.example.service.PdfCacheService;
+import org.example.service.PdfRenderingService;
 import org.example.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -20,6 +24,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.HashMap;
@@ -37,17 +42,80 @@ public class PayslipController {
     private PayslipService payslipService;
 
     @Autowired
-    private PdfService pdfService;
+    private PdfCacheService pdfCacheService;
+
+    @Autowired
+    private PayslipExportService payslipExportService;
 
     @Autowired
     private UserService userService;
 
+    /**
+     * Generate payslips for all enabled users of an organization (Admin/HR only)
+     */
+    @PostMapping("/payroll-runs")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('HR')")
+    public ResponseEntity<?> runPayroll(@RequestBody Map<String, Object> requestData) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            if (requestData.get("organizationId") == null) {
+                return ResponseEntity.badRequest().body("Organization ID is required");
+            }
+            if (requestData.get("payPeriodStart") == null) {
+                return ResponseEntity.badRequest().body("Pay period start date is required");
+            }
+            if (requestData.get("payPeriodEnd") == null) {
+                return ResponseEntity.badRequest().body("Pay period end date is required");
+            }
+
+            Long organizationId = Long.valueOf(requestData.get("organizationId").toString());
+            if (!isCallerOrganization(organizationId)) {
+                response.put("success", false);
+                response.put("message", "You can only run payroll for your own organization");
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+            }
+            LocalDate payPeriodStart = LocalDate.parse(requestData.get("payPeriodStart").toString());
+            LocalDate payPeriodEnd = LocalDate.parse(requestData.get("payPeriodEnd").toString());
+            String notes = requestData.get("notes") != null ? requestData.get("notes").toString() : null;
+
+            Long createdById = null;
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication != null && authentication.isAuthenticated()) {
+                createdById = userService.findByUsername(authentication.getName()).map(User::getId).orElse(null);
+            }
+
+            PayslipService.PayrollRunReport report = payslipService.runPayroll(
+                organizationId, createdById, payPeriodStart, payPeriodEnd, notes);
+
+            response.put("success", true);
+            response.put("message", "Generated " + report.getCreatedCount() + " payslips");
+            response.put("report", report);
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (DataIntegrityViolationException e) {
+            // Another run for the same period committed first
+            response.put("success", false);
+            response.put("message", "Payslips for this period were generated concurrently; please retry");
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (Exception e) {
+            logger.error("Error running payroll: {}", e.getMessage(), e);
+            response.put("success", false);
+            response.put("message", "Failed to run payroll: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
     /**
      * Generate payslip for a user
      */
     @PostMapping("/generate")
     @PreAuthorize("hasRole('ADMIN') or hasRole('HR')")
-    public ResponseEntity<?> generatePayslip(@RequestBody Map<String, Object> requestData) {
+    public ResponseEntity<?> generatePayslip(@RequestBody Map<String, Object> requestData, HttpServletRequest request) {
         logger.info("Received payslip generation request: {}", requestData);
         
         try {
@@ -67,6 +135,9 @@ public class PayslipController {
 
             Long userId = Long.valueOf(requestData.get("userId").toString());
             Long organizationId = Long.valueOf(requestData.get("organizationId").toString());
+            if (!isCallerOrganization(organizationId)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body("You can only generate payslips for your own organization");
+            }
             LocalDate payPeriodStart = LocalDate.parse(requestData.get("payPeriodStart").toString());
             LocalDate payPeriodEnd = LocalDate.parse(requestData.get("payPeriodEnd").toString());
 
@@ -91,17 +162,21 @@ public class PayslipController {
             // Generate payslip data without storing
             Payslip payslip = payslipService.generatePayslipData(userId, organizationId, payPeriodStart, payPeriodEnd, additionalData);
             
-            // Generate PDF directly
-            byte[] pdfBytes = pdfService.generatePayslipPdf(payslip);
-            
+            // Generate PDF directly into the response
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_PDF);
             headers.setContentDispositionFormData("attachment", 
                 "payslip_" + payslip.getPayslipNumber() + ".pdf");
-            headers.setContentLength(pdfBytes.length);
 
-            return new ResponseEntity<>(pdfBytes, headers, HttpStatus.OK);
+            StreamingResponseBody body = pdfCacheService.preparePayslipPdf(payslip).toResponseBody(request);
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
 
+        } catch (PdfRenderingService.RenderingBusyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Error generating payslip: " + e.getMessage());
         } catch (Exception e) {
             logger.error("Error generating payslip: {}", e.getMessage(), e);
             return ResponseEntity.internalServerError().body("Error generating payslip: " + e.getMessage());
@@ -389,7 +464,7 @@ public class PayslipController {
      * Download payslip as PDF
      */
     @GetMapping("/{payslipId}/download")
-    public ResponseEntity<?> downloadPayslip(@PathVariable Long payslipId) {
+    public ResponseEntity<?> downloadPayslip(@PathVariable Long payslipId, HttpServletRequest request) {
         try {
             Payslip payslip = payslipService.getPayslipById(payslipId);
             
@@ -410,22 +485,77 @@ public class PayslipController {
                 }
             }
 
-            byte[] pdfBytes = pdfService.generatePayslipPdf(payslip);
+            PdfCacheService.RenderedPdf pdf = pdfCacheService.preparePayslipPdf(payslip);
             
+            // No Content-Length: the PDF is streamed to the client with chunked transfer encoding
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_PDF);
             headers.setContentDispositionFormData("attachment", 
                 "payslip_" + payslip.getPayslipNumber() + ".pdf");
-            headers.setContentLength(pdfBytes.length);
 
-            return new ResponseEntity<>(pdfBytes, headers, HttpStatus.OK);
+            StreamingResponseBody body = pdf.toResponseBody(request);
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
 
+        } catch (PdfRenderingService.RenderingBusyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(e.getMessage());
         } catch (Exception e) {
             logger.error("Error downloading payslip: {}", e.getMessage(), e);
             return ResponseEntity.internalServerError().body("Failed to download payslip: " + e.getMessage());
         }
     }
 
+    /**
+     * Download all payslips of a pay period as a ZIP of PDFs (Admin/HR only)
+     */
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('HR')")
+    public ResponseEntity<?> exportPayslips(@RequestParam Long organizationId,
+                                            @RequestParam int year,
+                                            @RequestParam int month) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            if (!isCallerOrganization(organizationId)) {
+                response.put("success", false);
+                response.put("message", "You can only export payslips of your own organization");
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(response);
+            }
+            if (month < 1 || month > 12) {
+                response.put("success", false);
+                response.put("message", "Month must be between 1 and 12");
+                return ResponseEntity.badRequest().body(response);
+            }
+
+            List<Payslip> payslips = payslipExportService.getPayslipsForPeriod(organizationId, year, month);
+            if (payslips.isEmpty()) {
+                response.put("success", false);
+                response.put("message", "No payslips found for " + year + "-" + String.format("%02d", month));
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+            }
+
+            // Entries are written as each PDF is rendered; no Content-Length is known up front
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType("application/zip"));
+            headers.setContentDispositionFormData("attachment",
+                "payslips_" + year + "_" + String.format("%02d", month) + ".zip");
+
+            StreamingResponseBody body = out -> payslipExportService.writeZip(payslips, out);
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
+
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            logger.error("Error exporting payslips: {}", e.getMessage(), e);
+            response.put("success", false);
+            response.put("message", "Failed to export payslips: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
     /**
      * Get payslip statistics
      */
@@ -454,4 +584,16 @@ public class PayslipController {
             return ResponseEntity.internalServerError().body(response);
         }
     }
+
+    // Admin and HR users may only act on payroll of the organization they belong to
+    private boolean isCallerOrganization(Long organizationId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() || organizationId == null) {
+            return false;
+        }
+        return userService.findByUsername(authentication.getName())
+                .map(User::getOrganization)
+                .map(organization -> organizationId.equals(organization.getId()))
+                .orElse(false);
+    }
 }
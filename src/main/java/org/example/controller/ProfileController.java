@@ -3,6 +3,7 @@ package org.example.controller;
 import org.example.models.User;
 import org.example.service.FileStoragePathBuilder;
 import org.example.service.FileStorageService;
+import org.example.service.ImageDerivativeService;
 import org.example.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +28,7 @@ public class ProfileController {
     private final UserService userService;
     private final PasswordEncoder passwordEncoder;
     private final FileStorageService fileStorageService;
+    private final ImageDerivativeService imageDerivativeService;
 
     @Value("${app.storage.allowed-image-types:image/jpeg,image/png,image/gif,image/webp}")
     private String allowedImageTypes;
@@ -35,10 +37,12 @@ public class ProfileController {
     private long maxProfileImageSize;
 
     @Autowired
-    public ProfileController(UserService userService, PasswordEncoder passwordEncoder, FileStorageService fileStorageService) {
+    public ProfileController(UserService userService, PasswordEncoder passwordEncoder, FileStorageService fileStorageService,
+                             ImageDerivativeService imageDerivativeService) {
         this.userService = userService;
         this.passwordEncoder = passwordEncoder;
         this.fileStorageService = fileStorageService;
+        this.imageDerivativeService = imageDerivativeService;
     }
 
     @PostMapping("/change-password")
@@ -207,6 +211,7 @@ public class ProfileController {
             if (user.getProfileImageUrl() != null && !user.getProfileImageUrl().isEmpty()) {
                 try {
                     fileStorageService.deleteFile(user.getProfileImageUrl());
+                    imageDerivativeService.deleteDerivatives(user.getProfileImageUrl());
                     logger.info("Deleted old profile image for user: {}", username);
                 } catch (Exception e) {
                     // Log but don't fail if old image deletion fails
@@ -221,6 +226,8 @@ public class ProfileController {
             String filename = "user_" + user.getId();
 
             String imageUrl = fileStorageService.storeFile(file, directory, filename);
+            imageDerivativeService.generateDerivatives(imageUrl, file.getBytes(),
+                    ImageDerivativeService.Variant.THUMBNAIL, ImageDerivativeService.Variant.AVATAR);
 
             // Update user profile with new image URL
             user.setProfileImageUrl(imageUrl);
@@ -232,6 +239,8 @@ public class ProfileController {
             successResponse.put("success", true);
             successResponse.put("message", "Profile image uploaded successfully");
             successResponse.put("imageUrl", imageUrl);
+            successResponse.put("avatarUrl", ImageDerivativeService.derivativeUrl(imageUrl, ImageDerivativeService.Variant.AVATAR));
+            successResponse.put("thumbnailUrl", ImageDerivativeService.derivativeUrl(imageUrl, ImageDerivativeService.Variant.THUMBNAIL));
             return ResponseEntity.ok(successResponse);
 
         } catch (FileStorageService.FileStorageException e) {
@@ -278,6 +287,7 @@ public class ProfileController {
 
             // Delete the image file
             fileStorageService.deleteFile(user.getProfileImageUrl());
+            imageDerivativeService.deleteDerivatives(user.getProfileImageUrl());
 
             // Clear the image URL from user profile
             user.setProfileImageUrl(null);
@@ -417,6 +427,7 @@ public class ProfileController {
                     // Don't delete if it's the same file (unlikely due to UUID)
                     if (!user.getProfileImageUrl().equals(fileUrl)) {
                         fileStorageService.deleteFile(user.getProfileImageUrl());
+                        imageDerivativeService.deleteDerivatives(user.getProfileImageUrl());
                     }
                 } catch (Exception e) {
                     logger.warn("Failed to delete old profile image: {}", e.getMessage());
@@ -426,6 +437,8 @@ public class ProfileController {
             // Update user profile
             user.setProfileImageUrl(fileUrl);
             userService.save(user);
+            imageDerivativeService.generateDerivatives(fileUrl,
+                    ImageDerivativeService.Variant.THUMBNAIL, ImageDerivativeService.Variant.AVATAR);
 
             return ResponseEntity.ok(Map.of(
                 "success", true,
@@ -2,18 +2,28 @@ package org.example.controller;
 
 import org.example.models.ProjectAttachment;
 import org.example.models.User;
+import org.example.service.AttachmentArchiveService;
+import org.example.service.FileStorageService;
 import org.example.service.ProjectService;
 import org.example.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,12 +40,44 @@ public class ProjectAttachmentController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private AttachmentArchiveService attachmentArchiveService;
+
+    @Value("${app.attachments.archive-timeout-minutes:240}")
+    private long archiveTimeoutMinutes;
+
     @GetMapping
     @PreAuthorize("hasAuthority('attachments.view')")
     public ResponseEntity<List<ProjectAttachment>> getAttachments(@PathVariable Long projectId) {
         return ResponseEntity.ok(projectService.getAttachments(projectId));
     }
 
+    /**
+     * The current drawing register: latest revisions only, newest first, keyset-paginated.
+     * Pass nextBeforeId from the previous page as beforeId; it is null on the last page.
+     */
+    @GetMapping("/register")
+    @PreAuthorize("hasAuthority('attachments.view')")
+    public ResponseEntity<Map<String, Object>> getDrawingRegister(
+            @PathVariable Long projectId,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(defaultValue = "50") int limit) {
+        List<ProjectAttachment> page = projectService.getDrawingRegister(projectId, beforeId, limit);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("attachments", page);
+        response.put("nextBeforeId", page.size() >= Math.min(Math.max(limit, 1), 200) ? page.get(page.size() - 1).getId() : null);
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/revisions")
+    @PreAuthorize("hasAuthority('attachments.view')")
+    public ResponseEntity<List<ProjectAttachment>> getDrawingRevisions(
+            @PathVariable Long projectId,
+            @RequestParam String drawingNumber) {
+        return ResponseEntity.ok(projectService.getDrawingRevisions(projectId, drawingNumber));
+    }
+
     @PostMapping
     @PreAuthorize("hasAuthority('attachments.upload')")
     public ResponseEntity<ProjectAttachment> uploadAttachment(
@@ -43,6 +85,7 @@ public class ProjectAttachmentController {
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "stage", required = false) org.example.models.enums.ProjectStage stage,
             @RequestParam(value = "drawingType", required = false) org.example.models.enums.DrawingType drawingType,
+            @RequestParam(value = "drawingNumber", required = false) String drawingNumber,
             @AuthenticationPrincipal UserDetails userDetails) throws IOException {
         
         logger.info("Received upload request for project: {} from user: {}", projectId, userDetails.getUsername());
@@ -51,7 +94,111 @@ public class ProjectAttachmentController {
         User user = userService.findByUsername(userDetails.getUsername())
                 .orElseThrow(() -> new RuntimeException("User not found"));
         
-        return ResponseEntity.ok(projectService.uploadAttachment(projectId, file, user, stage, drawingType));
+        return ResponseEntity.ok(projectService.uploadAttachment(projectId, file, user, stage, drawingType, drawingNumber));
+    }
+
+    /**
+     * Starts a multipart upload for a large file. Body: filename, contentType, size.
+     * Returns the uploadId, storagePath, partSize and partCount the client splits the file by.
+     */
+    @PostMapping("/uploads")
+    @PreAuthorize("hasAuthority('attachments.upload')")
+    public ResponseEntity<FileStorageService.MultipartUpload> startUpload(
+            @PathVariable Long projectId,
+            @RequestBody Map<String, Object> requestData,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        User user = currentUser(userDetails);
+        String filename = requestData.get("filename") != null ? requestData.get("filename").toString() : null;
+        String contentType = requestData.get("contentType") != null ? requestData.get("contentType").toString() : null;
+        long size = requestData.get("size") instanceof Number number ? number.longValue() : 0;
+
+        logger.info("Starting multipart upload for project: {} from user: {}, File: {}, Size: {}",
+                projectId, userDetails.getUsername(), filename, size);
+        return ResponseEntity.ok(projectService.startAttachmentUpload(projectId, filename, contentType, size, user));
+    }
+
+    /**
+     * Presigned URLs for the given parts. Body: storagePath, partNumbers.
+     * Each part is PUT to its URL; the ETag response header must be kept for completion.
+     */
+    @PostMapping("/uploads/{uploadId}/part-urls")
+    @PreAuthorize("hasAuthority('attachments.upload')")
+    public ResponseEntity<Map<Integer, String>> getPartUrls(
+            @PathVariable Long projectId,
+            @PathVariable String uploadId,
+            @RequestBody Map<String, Object> requestData,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        User user = currentUser(userDetails);
+        String storagePath = requestData.get("storagePath") != null ? requestData.get("storagePath").toString() : null;
+        List<Integer> partNumbers = new ArrayList<>();
+        if (requestData.get("partNumbers") instanceof List<?> numbers) {
+            for (Object number : numbers) {
+                partNumbers.add(number instanceof Number n ? n.intValue() : null);
+            }
+        }
+        return ResponseEntity.ok(projectService.getAttachmentPartUrls(projectId, storagePath, uploadId, partNumbers, user));
+    }
+
+    /**
+     * Parts stored so far, so an interrupted upload can resume with only the missing parts.
+     */
+    @GetMapping("/uploads/{uploadId}/parts")
+    @PreAuthorize("hasAuthority('attachments.upload')")
+    public ResponseEntity<List<FileStorageService.UploadedPart>> getUploadedParts(
+            @PathVariable Long projectId,
+            @PathVariable String uploadId,
+            @RequestParam String storagePath,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        User user = currentUser(userDetails);
+        return ResponseEntity.ok(projectService.getUploadedAttachmentParts(projectId, storagePath, uploadId, user));
+    }
+
+    /**
+     * Assembles the parts and records the attachment. Body: storagePath, filename, contentType,
+     * stage, drawingType and parts (partNumber and eTag for every part).
+     */
+    @PostMapping("/uploads/{uploadId}/complete")
+    @PreAuthorize("hasAuthority('attachments.upload')")
+    public ResponseEntity<ProjectAttachment> completeUpload(
+            @PathVariable Long projectId,
+            @PathVariable String uploadId,
+            @RequestBody Map<String, Object> requestData,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        User user = currentUser(userDetails);
+        String storagePath = requestData.get("storagePath") != null ? requestData.get("storagePath").toString() : null;
+        String filename = requestData.get("filename") != null ? requestData.get("filename").toString() : null;
+        String contentType = requestData.get("contentType") != null ? requestData.get("contentType").toString() : null;
+        org.example.models.enums.ProjectStage stage = parseEnum(org.example.models.enums.ProjectStage.class,
+                requestData.get("stage"), "stage");
+        org.example.models.enums.DrawingType drawingType = parseEnum(org.example.models.enums.DrawingType.class,
+                requestData.get("drawingType"), "drawing type");
+        String drawingNumber = requestData.get("drawingNumber") != null ? requestData.get("drawingNumber").toString() : null;
+
+        List<FileStorageService.UploadedPart> parts = new ArrayList<>();
+        if (requestData.get("parts") instanceof List<?> partList) {
+            for (Object item : partList) {
+                if (item instanceof Map<?, ?> part && part.get("partNumber") instanceof Number partNumber
+                        && part.get("eTag") != null) {
+                    parts.add(new FileStorageService.UploadedPart(partNumber.intValue(), part.get("eTag").toString()));
+                }
+            }
+        }
+
+        logger.info("Completing multipart upload {} for project: {} ({} parts)", uploadId, projectId, parts.size());
+        return ResponseEntity.ok(projectService.completeAttachmentUpload(projectId, storagePath, uploadId, parts,
+                filename, contentType, user, stage, drawingType, drawingNumber));
+    }
+
+    @DeleteMapping("/uploads/{uploadId}")
+    @PreAuthorize("hasAuthority('attachments.upload')")
+    public ResponseEntity<Void> abortUpload(
+            @PathVariable Long projectId,
+            @PathVariable String uploadId,
+            @RequestParam String storagePath,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        User user = currentUser(userDetails);
+        projectService.abortAttachmentUpload(projectId, storagePath, uploadId, user);
+        return ResponseEntity.ok().build();
     }
 
     @DeleteMapping("/{attachmentId}")
@@ -63,6 +210,55 @@ public class ProjectAttachmentController {
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * Downloads the project's attachments as one ZIP, optionally limited to a stage and/or drawing
+     * type. Files are streamed from storage into the response as the ZIP is written.
+     *
+     * Archives can run to gigabytes, so the stream has its own timeout instead of the
+     * application-wide async request timeout, which would cut it off and leave a corrupt ZIP.
+     */
+    @GetMapping("/archive")
+    @PreAuthorize("hasAuthority('attachments.view')")
+    public WebAsyncTask<Void> downloadArchive(
+            @PathVariable Long projectId,
+            @RequestParam(value = "stage", required = false) org.example.models.enums.ProjectStage stage,
+            @RequestParam(value = "drawingType", required = false) org.example.models.enums.DrawingType drawingType,
+            jakarta.servlet.http.HttpServletResponse response) {
+        List<ProjectAttachment> attachments = projectService.getAttachmentsForArchive(projectId, stage, drawingType);
+        if (attachments.isEmpty()) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return null;
+        }
+
+        // No Content-Length: entries are written as the files are read
+        StringBuilder filename = new StringBuilder("project_").append(projectId);
+        if (stage != null) {
+            filename.append("_").append(stage.name().toLowerCase());
+        }
+        if (drawingType != null) {
+            filename.append("_").append(drawingType.name().toLowerCase());
+        }
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(filename.append(".zip").toString()).build().toString());
+
+        logger.info("Streaming archive of {} attachments for project: {}", attachments.size(), projectId);
+        return new WebAsyncTask<>(TimeUnit.MINUTES.toMillis(archiveTimeoutMinutes), () -> {
+            attachmentArchiveService.writeZip(attachments, response.getOutputStream());
+            response.flushBuffer();
+            return null;
+        });
+    }
+
+    /**
+     * Download URLs for all of the project's attachments in one call, keyed by attachment ID.
+     */
+    @GetMapping("/sign-urls")
+    @PreAuthorize("hasAuthority('attachments.view')")
+    public ResponseEntity<Map<Long, String>> getDownloadUrls(@PathVariable Long projectId) {
+        return ResponseEntity.ok(projectService.generatePresignedDownloadUrls(projectId));
+    }
+
     @GetMapping("/{attachmentId}/sign-url")
     @PreAuthorize("hasAuthority('attachments.view')")
     public ResponseEntity<Map<String, String>> getDownloadUrl(
@@ -71,4 +267,32 @@ public class ProjectAttachmentController {
         String url = projectService.generatePresignedDownloadUrl(projectId, attachmentId);
         return ResponseEntity.ok(Map.of("url", url));
     }
+
+    private User currentUser(UserDetails userDetails) {
+        return userService.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+
+    /**
+     * Invalid input from the services (bad stage, missing parts, unknown project) is the client's
+     * mistake, not a server error.
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, Object>> handleIllegalArgument(IllegalArgumentException e) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", e.getMessage());
+        return ResponseEntity.badRequest().body(response);
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, Object value, String label) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, value.toString());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid " + label + ": " + value);
+        }
+    }
 }
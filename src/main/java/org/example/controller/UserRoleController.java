@@ -6,6 +6,7 @@ import org.example.models.User;
 import org.example.repository.RoleRepository;
 import org.example.repository.UserRepository;
 import org.example.service.PermissionService;
+import org.example.service.UserDetailsServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -30,6 +31,9 @@ public class UserRoleController {
     @Autowired
     private PermissionService permissionService;
 
+    @Autowired
+    private UserDetailsServiceImpl userDetailsService;
+
     /**
      * Get user's roles and permissions
      */
@@ -81,6 +85,7 @@ public class UserRoleController {
         }
 
         userRepository.save(user);
+        userDetailsService.evict(user.getUsername());
 
         // Return updated user roles
         Set<String> updatedRoleNames = user.getRoles().stream()
@@ -118,6 +123,7 @@ public class UserRoleController {
 
         user.getRoles().add(role);
         userRepository.save(user);
+        userDetailsService.evict(user.getUsername());
 
         // Return updated user roles
         Set<String> roleNames = user.getRoles().stream()
@@ -154,6 +160,7 @@ public class UserRoleController {
 
         user.getRoles().removeIf(role -> role.getName().equals(roleName));
         userRepository.save(user);
+        userDetailsService.evict(user.getUsername());
 
         // Return updated user roles
         Set<String> roleNames = user.getRoles().stream()
@@ -0,0 +1,116 @@
+package org.example.models;
+
+import jakarta.persistence.*;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.example.models.enums.NotificationType;
+import java.time.LocalDateTime;
+
+/**
+ * An event for a user that is delivered in their next digest email rather than on its own.
+ * digestedAt stays null until the event has been included in a digest.
+ */
+@Entity
+@Table(name = "notifications", indexes = {
+    @Index(name = "idx_notification_pending_user", columnList = "digested_at, user_id")
+})
+public class Notification {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    @JsonIgnore
+    private User user;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 50)
+    private NotificationType type;
+
+    @Column(nullable = false, length = 500)
+    private String message;
+
+    // Frontend path, e.g. /tasks/42/details
+    @Column(length = 255)
+    private String link;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "digested_at")
+    private LocalDateTime digestedAt;
+
+    // Constructors
+    public Notification() {
+    }
+
+    public Notification(User user, NotificationType type, String message, String link) {
+        this.user = user;
+        this.type = type;
+        this.message = message;
+        this.link = link;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public NotificationType getType() {
+        return type;
+    }
+
+    public void setType(NotificationType type) {
+        this.type = type;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getLink() {
+        return link;
+    }
+
+    public void setLink(String link) {
+        this.link = link;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getDigestedAt() {
+        return digestedAt;
+    }
+
+    public void setDigestedAt(LocalDateTime digestedAt) {
+        this.digestedAt = digestedAt;
+    }
+}
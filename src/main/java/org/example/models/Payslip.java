@@ -36,6 +36,10 @@ public class Payslip {
     @Column(name = "days_worked", nullable = false)
     private Integer daysWorked = 0;
 
+    // Working days in the pay period as of generation; later holiday changes do not alter issued payslips
+    @Column(name = "working_days_in_period")
+    private Integer workingDaysInPeriod;
+
     @Column(name = "overtime_hours", precision = 5, scale = 2)
     private BigDecimal overtimeHours = BigDecimal.ZERO;
 
@@ -221,6 +225,14 @@ public class Payslip {
         calculateAmounts();
     }
 
+    public Integer getWorkingDaysInPeriod() {
+        return workingDaysInPeriod;
+    }
+
+    public void setWorkingDaysInPeriod(Integer workingDaysInPeriod) {
+        this.workingDaysInPeriod = workingDaysInPeriod;
+    }
+
     public BigDecimal getOvertimeHours() {
         return overtimeHours;
     }
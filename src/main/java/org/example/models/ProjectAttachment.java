@@ -1,14 +1,20 @@
 package org.example.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "project_attachments")
+@Table(name = "project_attachments",
+    uniqueConstraints = @UniqueConstraint(name = "uk_attachment_drawing_revision",
+        columnNames = {"project_id", "drawing_number", "revision"}),
+    indexes = @Index(name = "idx_attachment_register", columnList = "project_id, is_latest, id"))
 @Data
 @Builder
 @NoArgsConstructor
@@ -28,6 +34,14 @@ public class ProjectAttachment {
     @Column(nullable = false)
     private String fileUrl; // S3 Key or Path
 
+    // Shared stored file; null for attachments uploaded before deduplication, which own fileUrl outright
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "blob_id")
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private AttachmentBlob blob;
+
     private String contentType;
 
     private Long size;
@@ -38,6 +52,19 @@ public class ProjectAttachment {
     @Enumerated(EnumType.STRING)
     private org.example.models.enums.DrawingType drawingType;
 
+    // Logical drawing identity (e.g. "A-101"); every revision of a drawing shares it. Null for standalone files.
+    @Column(name = "drawing_number", length = 100)
+    private String drawingNumber;
+
+    @Column(name = "revision")
+    @Builder.Default
+    private Integer revision = 1;
+
+    // Latest-revision pointer: set on exactly one revision of each drawing (and on standalone files)
+    @Column(name = "is_latest")
+    @Builder.Default
+    private Boolean latest = true;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "uploaded_by_id")
     private User uploadedBy;
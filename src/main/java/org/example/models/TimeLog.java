@@ -11,7 +11,8 @@ import java.util.Objects;
 @Table(name = "time_logs", indexes = {
     @Index(name = "idx_timelog_user_id", columnList = "user_id"),
     @Index(name = "idx_timelog_task_id", columnList = "task_id"),
-    @Index(name = "idx_timelog_date_logged", columnList = "date_logged")
+    @Index(name = "idx_timelog_date_logged", columnList = "date_logged"),
+    @Index(name = "idx_timelog_user_date", columnList = "user_id, date_logged")
 })
 public class TimeLog {
 
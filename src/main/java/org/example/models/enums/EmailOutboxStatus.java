@@ -0,0 +1,7 @@
+package org.example.models.enums;
+
+public enum EmailOutboxStatus {
+    PENDING,
+    SENT,
+    DEAD
+}
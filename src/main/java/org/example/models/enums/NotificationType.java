@@ -0,0 +1,15 @@
+package org.example.models.enums;
+
+public enum NotificationType {
+    TASK_ASSIGNED("Task assigned");
+
+    private final String displayName;
+
+    NotificationType(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
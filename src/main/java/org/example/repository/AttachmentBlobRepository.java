@@ -0,0 +1,34 @@
+package org.example.repository;
+
+import jakarta.persistence.LockModeType;
+import org.example.models.AttachmentBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface AttachmentBlobRepository extends JpaRepository<AttachmentBlob, Long> {
+
+    Optional<AttachmentBlob> findByOrganization_IdAndSha256(Long organizationId, String sha256);
+
+    // Takes a reference to the blob, creating it with storageKey if it does not exist yet.
+    // A single statement, so concurrent uploads of the same file cannot both create it.
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO attachment_blobs (organization_id, sha256, storage_key, size, content_type, ref_count, created_at) " +
+                   "VALUES (:organizationId, :sha256, :storageKey, :size, :contentType, 1, NOW()) " +
+                   "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1", nativeQuery = true)
+    int acquire(@Param("organizationId") Long organizationId,
+                @Param("sha256") String sha256,
+                @Param("storageKey") String storageKey,
+                @Param("size") long size,
+                @Param("contentType") String contentType);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM AttachmentBlob b WHERE b.id = :id")
+    Optional<AttachmentBlob> findByIdForUpdate(@Param("id") Long id);
+}
@@ -0,0 +1,162 @@
+package org.example.repository;
+
+import org.example.models.Invoice;
+import org.example.models.InvoiceItem;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JDBC batch inserts for invoices created in bulk (billing runs).
+ * Invoice IDs use IDENTITY generation, which stops Hibernate from batching inserts,
+ * so bulk creation goes through JdbcTemplate instead of invoiceRepository.saveAll().
+ * Callers must run amounts through Invoice.calculateAmounts() beforehand since
+ * entity lifecycle callbacks are not invoked here.
+ */
+@Repository
+public class InvoiceBatchRepository {
+
+    private static final String INSERT_INVOICE_SQL =
+            "INSERT INTO invoices (invoice_number, organization_id, project_id, client_name, client_email, " +
+            "client_address, client_phone, issue_date, due_date, status, subtotal, tax_rate, tax_amount, " +
+            "cgst_rate, cgst_amount, sgst_rate, sgst_amount, igst_rate, igst_amount, " +
+            "cumulative_fee_percentage, cumulative_fee_amount, previously_billed_amount, " +
+            "total_amount, paid_amount, balance_amount, notes, terms_and_conditions, " +
+            "created_by, template_id, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_ITEM_SQL =
+            "INSERT INTO invoice_items (description, item_type, quantity, unit_price, amount, " +
+            "time_log_reference, invoice_id, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public InvoiceBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Insert invoices and their items in two JDBC batches.
+     * Generated IDs are written back onto the invoice objects.
+     */
+    public void batchInsert(List<Invoice> invoices) {
+        if (invoices.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_INVOICE_SQL, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Invoice invoice = invoices.get(i);
+                        ps.setString(1, invoice.getInvoiceNumber());
+                        ps.setLong(2, invoice.getOrganization().getId());
+                        setNullableLong(ps, 3, invoice.getProject() != null ? invoice.getProject().getId() : null);
+                        ps.setString(4, invoice.getClientName());
+                        ps.setString(5, invoice.getClientEmail());
+                        ps.setString(6, invoice.getClientAddress());
+                        ps.setString(7, invoice.getClientPhone());
+                        ps.setDate(8, Date.valueOf(invoice.getIssueDate()));
+                        ps.setDate(9, Date.valueOf(invoice.getDueDate()));
+                        ps.setString(10, invoice.getStatus().name());
+                        ps.setBigDecimal(11, scale(invoice.getSubtotal()));
+                        ps.setBigDecimal(12, invoice.getTaxRate());
+                        ps.setBigDecimal(13, scale(invoice.getTaxAmount()));
+                        ps.setBigDecimal(14, invoice.getCgstRate());
+                        ps.setBigDecimal(15, scale(invoice.getCgstAmount()));
+                        ps.setBigDecimal(16, invoice.getSgstRate());
+                        ps.setBigDecimal(17, scale(invoice.getSgstAmount()));
+                        ps.setBigDecimal(18, invoice.getIgstRate());
+                        ps.setBigDecimal(19, scale(invoice.getIgstAmount()));
+                        ps.setBigDecimal(20, invoice.getCumulativeFeePercentage());
+                        ps.setBigDecimal(21, invoice.getCumulativeFeeAmount());
+                        ps.setBigDecimal(22, invoice.getPreviouslyBilledAmount());
+                        ps.setBigDecimal(23, scale(invoice.getTotalAmount()));
+                        ps.setBigDecimal(24, invoice.getPaidAmount());
+                        ps.setBigDecimal(25, scale(invoice.getBalanceAmount()));
+                        ps.setString(26, invoice.getNotes());
+                        ps.setString(27, invoice.getTermsAndConditions());
+                        setNullableLong(ps, 28, invoice.getCreatedBy() != null ? invoice.getCreatedBy().getId() : null);
+                        setNullableLong(ps, 29, invoice.getTemplate() != null ? invoice.getTemplate().getId() : null);
+                        ps.setTimestamp(30, now);
+                        ps.setTimestamp(31, now);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return invoices.size();
+                    }
+                },
+                keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < invoices.size(); i++) {
+            Number id = (Number) keys.get(i).values().iterator().next();
+            invoices.get(i).setId(id.longValue());
+        }
+
+        List<InvoiceItem> items = new ArrayList<>();
+        for (Invoice invoice : invoices) {
+            items.addAll(invoice.getItems());
+        }
+        if (items.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_ITEM_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                InvoiceItem item = items.get(i);
+                ps.setString(1, item.getDescription());
+                ps.setString(2, item.getItemType().name());
+                ps.setBigDecimal(3, item.getQuantity());
+                ps.setBigDecimal(4, item.getUnitPrice());
+                ps.setBigDecimal(5, item.getAmount());
+                ps.setString(6, item.getTimeLogReference());
+                ps.setLong(7, item.getInvoice().getId());
+                ps.setTimestamp(8, now);
+                ps.setTimestamp(9, now);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return items.size();
+            }
+        });
+    }
+
+    private static void setNullableLong(PreparedStatement ps, int index, Long value) throws SQLException {
+        if (value != null) {
+            ps.setLong(index, value);
+        } else {
+            ps.setNull(index, Types.BIGINT);
+        }
+    }
+
+    // Tax amounts carry 4 decimal places from the rate division; columns are scale 2
+    private static BigDecimal scale(BigDecimal value) {
+        return value != null ? value.setScale(2, RoundingMode.HALF_UP) : null;
+    }
+}
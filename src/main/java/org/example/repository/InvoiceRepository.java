@@ -11,6 +11,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -58,7 +59,8 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
            "AND (:status IS NULL OR i.status = :status) " +
            "AND (:projectId IS NULL OR i.project.id = :projectId) " +
            "AND (:overdue IS FALSE OR (i.dueDate < :currentDate AND i.status NOT IN ('PAID', 'CANCELLED'))) " +
-           "AND (:search IS NULL OR LOWER(i.clientName) LIKE LOWER(CONCAT('%', :search, '%'))) " +
+           "AND (:search IS NULL OR LOWER(i.clientName) LIKE LOWER(CONCAT('%', :search, '%')) " +
+           "OR LOWER(i.invoiceNumber) LIKE LOWER(CONCAT('%', :search, '%'))) " +
            "ORDER BY i.createdAt DESC")
     Page<Invoice> findByOrganizationAndFilters(
             @Param("organization") Organization organization,
@@ -69,10 +71,36 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
             @Param("search") String search,
             Pageable pageable);
 
+    // Unified filter query restricted to IDs matched by the in-memory search index
+    @Query("SELECT i FROM Invoice i LEFT JOIN FETCH i.project LEFT JOIN FETCH i.organization LEFT JOIN FETCH i.template WHERE i.organization = :organization " +
+           "AND i.id IN :ids " +
+           "AND (:status IS NULL OR i.status = :status) " +
+           "AND (:projectId IS NULL OR i.project.id = :projectId) " +
+           "AND (:overdue IS FALSE OR (i.dueDate < :currentDate AND i.status NOT IN ('PAID', 'CANCELLED'))) " +
+           "ORDER BY i.createdAt DESC")
+    Page<Invoice> findByOrganizationAndFiltersAndIdIn(
+            @Param("organization") Organization organization,
+            @Param("status") InvoiceStatus status,
+            @Param("projectId") Long projectId,
+            @Param("overdue") Boolean overdue,
+            @Param("currentDate") LocalDate currentDate,
+            @Param("ids") Collection<Long> ids,
+            Pageable pageable);
+
+    // Searchable fields of every invoice, used to build the search index at startup
+    @Query("SELECT i.id, i.organization.id, i.invoiceNumber, i.clientName FROM Invoice i")
+    List<Object[]> findAllSearchFields();
+
     // Get next invoice sequence number for organization and year
     @Query("SELECT COALESCE(MAX(CAST(SUBSTRING(i.invoiceNumber, LENGTH(:prefix) + 1) AS int)), 0) FROM Invoice i WHERE i.organization = :organization AND i.invoiceNumber LIKE :prefix%")
     Integer findMaxSequenceByOrganizationAndPrefix(@Param("organization") Organization organization, @Param("prefix") String prefix);
 
+    // Previously billed subtotal per project (excluding cancelled invoices), used by billing runs
+    @Query("SELECT i.project.id, COALESCE(SUM(i.subtotal), 0) FROM Invoice i " +
+           "WHERE i.organization.id = :organizationId AND i.project IS NOT NULL AND i.status <> 'CANCELLED' " +
+           "GROUP BY i.project.id")
+    List<Object[]> getBilledSubtotalByProject(@Param("organizationId") Long organizationId);
+
     // Check if invoice number exists
     boolean existsByInvoiceNumber(String invoiceNumber);
 
@@ -0,0 +1,35 @@
+package org.example.repository;
+
+import org.example.models.Notification;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface NotificationRepository extends JpaRepository<Notification, Long> {
+
+    // Users with undigested notifications, keyset-paginated by user ID
+    @Query("SELECT DISTINCT n.user.id FROM Notification n WHERE n.digestedAt IS NULL AND n.user.id > :afterUserId " +
+           "ORDER BY n.user.id")
+    List<Long> findPendingUserIds(@Param("afterUserId") Long afterUserId, Pageable pageable);
+
+    // All undigested notifications for a batch of users, with the user loaded, in one query
+    @Query("SELECT n FROM Notification n JOIN FETCH n.user WHERE n.digestedAt IS NULL AND n.user.id IN :userIds " +
+           "ORDER BY n.user.id, n.createdAt")
+    List<Notification> findPendingForUsers(@Param("userIds") Collection<Long> userIds);
+
+    @Modifying
+    @Query("UPDATE Notification n SET n.digestedAt = :digestedAt WHERE n.id IN :ids")
+    int markDigested(@Param("ids") Collection<Long> ids, @Param("digestedAt") LocalDateTime digestedAt);
+
+    @Modifying
+    @Query("DELETE FROM Notification n WHERE n.digestedAt < :before")
+    int deleteDigestedBefore(@Param("before") LocalDateTime before);
+}
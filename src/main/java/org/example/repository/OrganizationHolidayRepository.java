@@ -0,0 +1,30 @@
+package org.example.repository;
+
+import org.example.models.OrganizationHoliday;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OrganizationHolidayRepository extends JpaRepository<OrganizationHoliday, Long> {
+
+    List<OrganizationHoliday> findByOrganization_IdAndHolidayDateBetweenOrderByHolidayDate(Long organizationId,
+                                                                                         LocalDate startDate,
+                                                                                         LocalDate endDate);
+
+    Optional<OrganizationHoliday> findByIdAndOrganization_Id(Long id, Long organizationId);
+
+    boolean existsByOrganization_IdAndHolidayDate(Long organizationId, LocalDate holidayDate);
+
+    // Only the dates, for building working-day calendars
+    @Query("SELECT h.holidayDate FROM OrganizationHoliday h WHERE h.organization.id = :organizationId " +
+           "AND h.holidayDate BETWEEN :startDate AND :endDate")
+    List<LocalDate> findHolidayDates(@Param("organizationId") Long organizationId,
+                                     @Param("startDate") LocalDate startDate,
+                                     @Param("endDate") LocalDate endDate);
+}
@@ -0,0 +1,83 @@
+package org.example.repository;
+
+import org.example.models.Payslip;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * JDBC batch inserts for payslips created in bulk (payroll runs).
+ * Payslip IDs use IDENTITY generation, which stops Hibernate from batching inserts,
+ * so bulk creation goes through JdbcTemplate instead of payslipRepository.saveAll().
+ * Callers must run amounts through Payslip.calculateAmounts() beforehand since
+ * entity lifecycle callbacks are not invoked here.
+ */
+@Repository
+public class PayslipBatchRepository {
+
+    private static final int BATCH_SIZE = 100;
+
+    private static final String INSERT_PAYSLIP_SQL =
+            "INSERT INTO payslips (payslip_number, pay_period_start, pay_period_end, pay_date, " +
+            "basic_salary, daily_salary, days_worked, overtime_hours, overtime_rate, overtime_amount, " +
+            "allowances, bonuses, gross_salary, tax_deduction, insurance_deduction, other_deductions, " +
+            "total_deductions, net_salary, status, notes, user_id, organization_id, created_by_user_id, " +
+            "working_days_in_period, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public PayslipBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Insert payslips in JDBC batches of {@value #BATCH_SIZE}.
+     */
+    public void batchInsert(List<Payslip> payslips) {
+        if (payslips.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_PAYSLIP_SQL, payslips, BATCH_SIZE, (ps, payslip) -> {
+            ps.setString(1, payslip.getPayslipNumber());
+            ps.setDate(2, Date.valueOf(payslip.getPayPeriodStart()));
+            ps.setDate(3, Date.valueOf(payslip.getPayPeriodEnd()));
+            ps.setDate(4, Date.valueOf(payslip.getPayDate()));
+            ps.setBigDecimal(5, payslip.getBasicSalary());
+            ps.setBigDecimal(6, payslip.getDailySalary());
+            ps.setInt(7, payslip.getDaysWorked());
+            ps.setBigDecimal(8, payslip.getOvertimeHours());
+            ps.setBigDecimal(9, payslip.getOvertimeRate());
+            ps.setBigDecimal(10, payslip.getOvertimeAmount());
+            ps.setBigDecimal(11, payslip.getAllowances());
+            ps.setBigDecimal(12, payslip.getBonuses());
+            ps.setBigDecimal(13, payslip.getGrossSalary());
+            ps.setBigDecimal(14, payslip.getTaxDeduction());
+            ps.setBigDecimal(15, payslip.getInsuranceDeduction());
+            ps.setBigDecimal(16, payslip.getOtherDeductions());
+            ps.setBigDecimal(17, payslip.getTotalDeductions());
+            ps.setBigDecimal(18, payslip.getNetSalary());
+            ps.setString(19, payslip.getStatus().name());
+            ps.setString(20, payslip.getNotes());
+            ps.setLong(21, payslip.getUser().getId());
+            ps.setLong(22, payslip.getOrganization().getId());
+            if (payslip.getCreatedBy() != null) {
+                ps.setLong(23, payslip.getCreatedBy().getId());
+            } else {
+                ps.setNull(23, Types.BIGINT);
+            }
+            ps.setObject(24, payslip.getWorkingDaysInPeriod(), Types.INTEGER);
+            ps.setTimestamp(25, now);
+            ps.setTimestamp(26, now);
+        });
+    }
+}
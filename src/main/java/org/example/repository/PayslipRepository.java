@@ -57,6 +57,12 @@ public interface PayslipRepository extends JpaRepository<Payslip, Long> {
     // Find by payslip number
     Optional<Payslip> findByPayslipNumber(String payslipNumber);
 
+    // IDs of users in an organization who already have a payslip overlapping the period
+    @Query("SELECT DISTINCT p.user.id FROM Payslip p WHERE p.organization.id = :organizationId AND p.payPeriodStart <= :endDate AND p.payPeriodEnd >= :startDate")
+    List<Long> findUserIdsWithPayPeriodOverlap(@Param("organizationId") Long organizationId,
+                                               @Param("startDate") LocalDate startDate,
+                                               @Param("endDate") LocalDate endDate);
+
     // Check if payslip exists for user and period
     @Query("SELECT COUNT(p) > 0 FROM Payslip p WHERE p.user = :user AND p.organization = :organization AND p.payPeriodStart <= :endDate AND p.payPeriodEnd >= :startDate")
     boolean existsByUserAndOrganizationAndPayPeriodOverlap(@Param("user") User user, 
@@ -82,8 +88,8 @@ public interface PayslipRepository extends JpaRepository<Payslip, Long> {
     @Query("SELECT p FROM Payslip p WHERE p.user = :user ORDER BY p.payPeriodStart DESC LIMIT 1")
     Optional<Payslip> findLatestByUser(@Param("user") User user);
 
-    // Find payslips by year and month
-    @Query("SELECT p FROM Payslip p WHERE p.organization = :organization AND YEAR(p.payPeriodStart) = :year AND MONTH(p.payPeriodStart) = :month ORDER BY p.payPeriodStart DESC")
+    // Find payslips by year and month (user and organization fetched for PDF rendering)
+    @Query("SELECT p FROM Payslip p JOIN FETCH p.user JOIN FETCH p.organization WHERE p.organization = :organization AND YEAR(p.payPeriodStart) = :year AND MONTH(p.payPeriodStart) = :month ORDER BY p.payPeriodStart DESC")
     List<Payslip> findByOrganizationAndYearAndMonth(@Param("organization") Organization organization, 
                                                    @Param("year") int year, 
                                                    @Param("month") int month);
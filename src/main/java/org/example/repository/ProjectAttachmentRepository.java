@@ -1,11 +1,47 @@
 package org.example.repository;
 
+import jakarta.persistence.LockModeType;
 import org.example.models.ProjectAttachment;
+import org.example.models.enums.DrawingType;
+import org.example.models.enums.ProjectStage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ProjectAttachmentRepository extends JpaRepository<ProjectAttachment, Long> {
     List<ProjectAttachment> findByProjectIdOrderByCreatedAtDesc(Long projectId);
+
+    // Current drawing register: latest revisions only, newest first, keyset-paginated by ID.
+    // Served from idx_attachment_register (project_id, is_latest, id) without touching superseded rows.
+    @Query("SELECT a FROM ProjectAttachment a WHERE a.project.id = :projectId AND a.latest = true " +
+           "AND a.id < :beforeId ORDER BY a.id DESC")
+    List<ProjectAttachment> findRegisterPage(@Param("projectId") Long projectId,
+                                             @Param("beforeId") Long beforeId,
+                                             Pageable pageable);
+
+    List<ProjectAttachment> findByProjectIdAndDrawingNumberOrderByRevisionDesc(Long projectId, String drawingNumber);
+
+    // Locks the drawing's latest revision so concurrent uploads of the same drawing get distinct revisions
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM ProjectAttachment a WHERE a.project.id = :projectId " +
+           "AND a.drawingNumber = :drawingNumber AND a.latest = true")
+    Optional<ProjectAttachment> findLatestRevisionForUpdate(@Param("projectId") Long projectId,
+                                                            @Param("drawingNumber") String drawingNumber);
+
+    Optional<ProjectAttachment> findFirstByProjectIdAndDrawingNumberOrderByRevisionDesc(Long projectId, String drawingNumber);
+
+    // Null stage or drawing type matches all; ordered so archive folders are written together
+    @Query("SELECT a FROM ProjectAttachment a WHERE a.project.id = :projectId " +
+           "AND (:stage IS NULL OR a.stage = :stage) " +
+           "AND (:drawingType IS NULL OR a.drawingType = :drawingType) " +
+           "ORDER BY a.stage, a.drawingType, a.originalFilename, a.id")
+    List<ProjectAttachment> findForArchive(@Param("projectId") Long projectId,
+                                           @Param("stage") ProjectStage stage,
+                                           @Param("drawingType") DrawingType drawingType);
 }
@@ -90,4 +90,13 @@ public interface ProjectRepository extends JpaRepository<Project, Long> {
            "WHERE p.organization.id = :organizationId " +
            "AND p.status IN ('ACTIVE', 'PROGRESS')")
     long countActiveProjectsByOrganization(@Param("organizationId") Long organizationId);
+
+    // Billing run: active, regular-charge projects with a budget and a stage, client fetched for GST
+    @Query("SELECT p FROM Project p JOIN FETCH p.client " +
+           "WHERE p.organization.id = :organizationId " +
+           "AND p.status IN ('ACTIVE', 'PROGRESS') " +
+           "AND p.chargeType = 'REGULAR' " +
+           "AND p.budget IS NOT NULL AND p.projectStage IS NOT NULL " +
+           "ORDER BY p.projectNumber")
+    List<Project> findBillableProjectsByOrganization(@Param("organizationId") Long organizationId);
 }
\ No newline at end of file
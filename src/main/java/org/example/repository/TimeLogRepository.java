@@ -4,6 +4,8 @@ import org.example.models.Task;
 import org.example.models.TimeLog;
 import org.example.models.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
@@ -17,4 +19,20 @@ public interface TimeLogRepository extends JpaRepository<TimeLog, Long> {
     List<TimeLog> findByUser_Id(Long userId);
     List<TimeLog> findByTaskAndDateLogged(Task task, LocalDate dateLogged);
     List<TimeLog> findByUserAndDateLoggedBetween(User user, LocalDate startDate, LocalDate endDate);
+
+    // Hours logged per (user, date) for all users of an organization: [userId, date, hours]
+    @Query("SELECT t.user.id, t.dateLogged, SUM(t.hoursLogged) FROM TimeLog t " +
+           "WHERE t.user.organization.id = :organizationId AND t.dateLogged BETWEEN :startDate AND :endDate " +
+           "GROUP BY t.user.id, t.dateLogged")
+    List<Object[]> sumHoursByUserAndDate(@Param("organizationId") Long organizationId,
+                                         @Param("startDate") LocalDate startDate,
+                                         @Param("endDate") LocalDate endDate);
+
+    // Hours logged per date for one user: [userId, date, hours]
+    @Query("SELECT t.user.id, t.dateLogged, SUM(t.hoursLogged) FROM TimeLog t " +
+           "WHERE t.user.id = :userId AND t.dateLogged BETWEEN :startDate AND :endDate " +
+           "GROUP BY t.user.id, t.dateLogged")
+    List<Object[]> sumHoursByDateForUser(@Param("userId") Long userId,
+                                         @Param("startDate") LocalDate startDate,
+                                         @Param("endDate") LocalDate endDate);
 }
\ No newline at end of file
@@ -0,0 +1,265 @@
+package org.example.service;
+
+import org.example.models.ProjectAttachment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams project attachments from FileStorageService into a ZIP, one folder per stage and
+ * drawing type.
+ *
+ * While one file is written, the next {@value #LOOKAHEAD} are already being read from storage on
+ * the archive prefetch pool. Each file in flight holds at most {@value #CHUNKS_PER_FILE} chunks of
+ * {@value #CHUNK_SIZE} bytes, so memory per download is constant however large the set is. When
+ * the pool is busy, files are read on the streaming thread instead.
+ */
+@Service
+public class AttachmentArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentArchiveService.class);
+
+    private static final int LOOKAHEAD = 2;
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int CHUNKS_PER_FILE = 8;
+    private static final long CHUNK_WAIT_SECONDS = 300;
+
+    private final FileStorageService fileStorageService;
+    private final ThreadPoolTaskExecutor archivePrefetchExecutor;
+
+    @Autowired
+    public AttachmentArchiveService(FileStorageService fileStorageService,
+                                    @Qualifier("archivePrefetchExecutor") ThreadPoolTaskExecutor archivePrefetchExecutor) {
+        this.fileStorageService = fileStorageService;
+        this.archivePrefetchExecutor = archivePrefetchExecutor;
+    }
+
+    /**
+     * Write a ZIP of the attachments to the stream, in the given order. An attachment that cannot
+     * be read is skipped and listed in FAILED.txt at the end of the ZIP; a failure partway through
+     * a file aborts the download. The stream is finished but not closed.
+     */
+    public void writeZip(List<ProjectAttachment> attachments, OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        Deque<PrefetchedFile> inFlight = new ArrayDeque<>();
+        List<String> failures = new ArrayList<>();
+        Set<String> entryNames = new HashSet<>();
+        long totalBytes = 0;
+
+        ZipOutputStream zip = new ZipOutputStream(out);
+        try {
+            int next = 0;
+            while (next < attachments.size() || !inFlight.isEmpty()) {
+                while (inFlight.size() <= LOOKAHEAD && next < attachments.size()) {
+                    inFlight.add(prefetch(attachments.get(next++)));
+                }
+
+                // The current file stays in flight until written, so it is cancelled too if writing fails
+                PrefetchedFile file = inFlight.peek();
+                String entryName = uniqueEntryName(file.attachment, entryNames);
+                try {
+                    totalBytes += file.writeEntry(zip, entryName);
+                } catch (FileUnavailableException e) {
+                    logger.warn("Skipping attachment {} in archive: {}", file.attachment.getId(), e.getMessage());
+                    failures.add(entryName + ": " + e.getMessage());
+                }
+                inFlight.poll();
+            }
+
+            if (!failures.isEmpty()) {
+                zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+                zip.putNextEntry(new ZipEntry("FAILED.txt"));
+                zip.write(String.join("\n", failures).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+            zip.finish();
+            zip.flush();
+
+            logger.info("Archived {} attachments ({} failed, {} bytes) in {} ms",
+                    attachments.size() - failures.size(), failures.size(), totalBytes, System.currentTimeMillis() - start);
+        } finally {
+            // The client may have disconnected; stop reading files for nobody
+            for (PrefetchedFile file : inFlight) {
+                file.cancel();
+            }
+        }
+    }
+
+    private PrefetchedFile prefetch(ProjectAttachment attachment) {
+        PrefetchedFile file = new PrefetchedFile(attachment);
+        try {
+            file.future = archivePrefetchExecutor.submit(file);
+        } catch (TaskRejectedException e) {
+            // Pool busy: this file is read when its turn comes
+        }
+        return file;
+    }
+
+    // {stage}/{drawing type}/{original filename}, numbered if the name repeats
+    private static String uniqueEntryName(ProjectAttachment attachment, Set<String> used) {
+        String folder = (attachment.getStage() != null ? attachment.getStage().name() : "UNSPECIFIED_STAGE") + "/"
+                + (attachment.getDrawingType() != null ? attachment.getDrawingType().name() : "UNSPECIFIED_TYPE") + "/";
+        String filename = attachment.getOriginalFilename() != null ? attachment.getOriginalFilename() : attachment.getName();
+        filename = filename.replaceAll("[/\\\\]", "_");
+
+        String name = folder + filename;
+        int dot = filename.lastIndexOf('.');
+        for (int copy = 2; !used.add(name.toLowerCase(Locale.ROOT)); copy++) {
+            name = dot > 0
+                    ? folder + filename.substring(0, dot) + " (" + copy + ")" + filename.substring(dot)
+                    : folder + filename + " (" + copy + ")";
+        }
+        return name;
+    }
+
+    // Images, PDFs and archives are already compressed; deflating them again only costs CPU
+    private static int compressionLevel(ProjectAttachment attachment) {
+        String contentType = attachment.getContentType() != null ? attachment.getContentType().toLowerCase(Locale.ROOT) : "";
+        if (contentType.startsWith("image/") || contentType.equals("application/pdf") || contentType.contains("zip")) {
+            return Deflater.NO_COMPRESSION;
+        }
+        return Deflater.BEST_SPEED;
+    }
+
+    /**
+     * One attachment's bytes, read from storage into a bounded queue of chunks by a prefetch
+     * thread, or straight from storage if no prefetch thread was free.
+     */
+    private final class PrefetchedFile implements Runnable {
+        private final ProjectAttachment attachment;
+        private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(CHUNKS_PER_FILE);
+        private volatile boolean cancelled;
+        private Future<?> future;
+
+        PrefetchedFile(ProjectAttachment attachment) {
+            this.attachment = attachment;
+        }
+
+        @Override
+        public void run() {
+            try (InputStream in = fileStorageService.getFileStream("/api/files/" + attachment.getFileUrl())) {
+                while (!cancelled) {
+                    byte[] data = in.readNBytes(CHUNK_SIZE);
+                    if (data.length == 0) {
+                        break;
+                    }
+                    put(new Chunk(data, null));
+                }
+                put(Chunk.END);
+            } catch (Exception e) {
+                put(new Chunk(null, e));
+            }
+        }
+
+        private void put(Chunk chunk) {
+            try {
+                // Waits for the writer; gives up once the download is abandoned
+                while (!cancelled && !chunks.offer(chunk, 1, TimeUnit.SECONDS)) {
+                    // Queue still full
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Writes the file as a ZIP entry and returns its size. The entry is only started once the
+         * first bytes have arrived, so a file that cannot be opened is skipped cleanly.
+         */
+        long writeEntry(ZipOutputStream zip, String entryName) throws IOException {
+            if (future == null) {
+                return writeDirect(zip, entryName);
+            }
+
+            Chunk chunk = take();
+            if (chunk.error() != null) {
+                throw new FileUnavailableException(chunk.error().getMessage());
+            }
+            zip.setLevel(compressionLevel(attachment));
+            zip.putNextEntry(new ZipEntry(entryName));
+            long size = 0;
+            while (chunk != Chunk.END) {
+                if (chunk.error() != null) {
+                    throw new IOException("Failed reading " + entryName + ": " + chunk.error().getMessage(), chunk.error());
+                }
+                zip.write(chunk.data());
+                size += chunk.data().length;
+                chunk = take();
+            }
+            zip.closeEntry();
+            zip.flush();
+            return size;
+        }
+
+        private long writeDirect(ZipOutputStream zip, String entryName) throws IOException {
+            InputStream in;
+            try {
+                in = fileStorageService.getFileStream("/api/files/" + attachment.getFileUrl());
+            } catch (Exception e) {
+                throw new FileUnavailableException(e.getMessage());
+            }
+            try (in) {
+                zip.setLevel(compressionLevel(attachment));
+                zip.putNextEntry(new ZipEntry(entryName));
+                long size = in.transferTo(zip);
+                zip.closeEntry();
+                zip.flush();
+                return size;
+            }
+        }
+
+        private Chunk take() throws IOException {
+            try {
+                Chunk chunk = chunks.poll(CHUNK_WAIT_SECONDS, TimeUnit.SECONDS);
+                if (chunk == null) {
+                    throw new IOException("Timed out reading attachment " + attachment.getId() + " from storage");
+                }
+                return chunk;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while archiving attachments", e);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(true);
+            }
+            chunks.clear();
+        }
+    }
+
+    private record Chunk(byte[] data, Exception error) {
+        static final Chunk END = new Chunk(new byte[0], null);
+    }
+
+    private static class FileUnavailableException extends IOException {
+        FileUnavailableException(String message) {
+            super(message);
+        }
+    }
+}
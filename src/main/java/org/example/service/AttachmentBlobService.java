@@ -0,0 +1,184 @@
+package org.example.service;
+
+import org.example.models.AttachmentBlob;
+import org.example.repository.AttachmentBlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Content-addressed storage for project attachments.
+ *
+ * Files are keyed by the SHA-256 of their content within an organization, so the same drawing
+ * uploaded to several projects or stages is stored once. Each attachment holds a reference to a
+ * blob; the stored file is deleted after the last reference is released.
+ */
+@Service
+public class AttachmentBlobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentBlobService.class);
+
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    private final AttachmentBlobRepository blobRepository;
+    private final FileStorageService fileStorageService;
+
+    @Autowired
+    public AttachmentBlobService(AttachmentBlobRepository blobRepository, FileStorageService fileStorageService) {
+        this.blobRepository = blobRepository;
+        this.fileStorageService = fileStorageService;
+    }
+
+    /**
+     * Takes a reference to the blob for an uploaded file. The file is only written to storage if
+     * the organization does not already have a blob with the same content.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public AttachmentBlob store(Long organizationId, MultipartFile file) {
+        String sha256;
+        try (InputStream content = file.getInputStream()) {
+            sha256 = sha256(content);
+        } catch (IOException e) {
+            throw new FileStorageService.FileStorageException("Failed to read file: " + e.getMessage(), e);
+        }
+
+        String storageKey = blobKey(organizationId, sha256, file.getOriginalFilename());
+        AttachmentBlob blob = acquire(organizationId, sha256, storageKey, file.getSize(), file.getContentType());
+        if (blob.getStorageKey().equals(storageKey)) {
+            // New content: the blob row is locked until commit, so a concurrent upload of the
+            // same file waits here and then reuses it. A failed write rolls the row back.
+            try (InputStream content = file.getInputStream()) {
+                fileStorageService.storeStream(content, file.getSize(), storageKey, file.getContentType());
+                afterRollback(() -> fileStorageService.deleteFile(storageKey));
+            } catch (IOException e) {
+                throw new FileStorageService.FileStorageException("Failed to store file: " + e.getMessage(), e);
+            }
+        } else {
+            logger.info("Upload {} matches stored blob {} ({} bytes not stored again)",
+                    file.getOriginalFilename(), blob.getId(), file.getSize());
+        }
+        return blob;
+    }
+
+    /**
+     * Takes a reference to the blob for a file already written to storagePath (e.g. by a multipart
+     * upload). If the content is a duplicate, the new copy is deleted and the existing blob is used.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public AttachmentBlob adopt(Long organizationId, String storagePath, long size, String contentType) {
+        String sha256;
+        try (InputStream content = fileStorageService.getFileStream("/api/files/" + storagePath)) {
+            sha256 = sha256(content);
+        } catch (IOException e) {
+            throw new FileStorageService.FileStorageException("Failed to read file: " + e.getMessage(), e);
+        }
+
+        AttachmentBlob blob = acquire(organizationId, sha256, storagePath, size, contentType);
+        if (!blob.getStorageKey().equals(storagePath)) {
+            logger.info("Upload {} matches stored blob {}, discarding the new copy", storagePath, blob.getId());
+            afterCommit(() -> fileStorageService.deleteFile(storagePath));
+        }
+        return blob;
+    }
+
+    /**
+     * Releases one reference to the blob, deleting the stored file after commit if it was the last.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(AttachmentBlob blob) {
+        AttachmentBlob locked = blobRepository.findByIdForUpdate(blob.getId())
+                .orElseThrow(() -> new IllegalStateException("Attachment blob not found: " + blob.getId()));
+
+        int remaining = locked.getRefCount() - 1;
+        if (remaining > 0) {
+            locked.setRefCount(remaining);
+            return;
+        }
+
+        String storageKey = locked.getStorageKey();
+        blobRepository.delete(locked);
+        afterCommit(() -> {
+            fileStorageService.deleteFile(storageKey);
+            logger.info("Deleted attachment blob {} ({})", locked.getId(), storageKey);
+        });
+    }
+
+    private AttachmentBlob acquire(Long organizationId, String sha256, String storageKey, long size, String contentType) {
+        blobRepository.acquire(organizationId, sha256, storageKey, size, contentType);
+        return blobRepository.findByOrganization_IdAndSha256(organizationId, sha256)
+                .orElseThrow(() -> new IllegalStateException("Attachment blob not found after insert"));
+    }
+
+    // A unique suffix, so a blob re-created after its last reference was released never shares a
+    // key with the old file that is still being deleted
+    private static String blobKey(Long organizationId, String sha256, String originalFilename) {
+        String extension = "";
+        if (originalFilename != null && originalFilename.contains(".")) {
+            extension = originalFilename.substring(originalFilename.lastIndexOf("."));
+        }
+        return "attachments/" + organizationId + "/" + sha256 + "_" + UUID.randomUUID().toString().substring(0, 8) + extension;
+    }
+
+    private static String sha256(InputStream content) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (DigestInputStream in = new DigestInputStream(content, digest)) {
+                byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+                while (in.read(buffer) != -1) {
+                    // Reading updates the digest
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void afterRollback(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        try {
+                            action.run();
+                        } catch (Exception e) {
+                            logger.warn("Failed to delete attachment file: {}", e.getMessage());
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    try {
+                        action.run();
+                    } catch (Exception e) {
+                        logger.warn("Failed to delete attachment file: {}", e.getMessage());
+                    }
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
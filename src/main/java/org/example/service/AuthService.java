@@ -48,6 +48,9 @@ public class AuthService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private UserDetailsServiceImpl userDetailsService;
+
     @Autowired
     private EmailService emailService;
 
@@ -186,6 +189,7 @@ public class AuthService {
         User user = verificationToken.getUser();
         user.setEnabled(true);
         userRepository.save(user);
+        userDetailsService.evict(user.getUsername());
 
         logger.info("Organization verified: {} (ID: {})", organization.getName(), organization.getId());
 
@@ -517,6 +521,7 @@ public class AuthService {
         User user = resetToken.getUser();
         user.setPassword(passwordEncoder.encode(newPassword));
         userRepository.save(user);
+        userDetailsService.evict(user.getUsername());
         logger.info("Password reset successful for user: {}", user.getUsername());
 
         // Mark token as used
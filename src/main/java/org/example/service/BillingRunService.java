@@ -0,0 +1,348 @@
+package org.example.service;
+
+import org.example.models.Invoice;
+import org.example.models.InvoiceTemplate;
+import org.example.models.Organization;
+import org.example.models.Project;
+import org.example.models.User;
+import org.example.repository.InvoiceBatchRepository;
+import org.example.repository.InvoiceRepository;
+import org.example.repository.InvoiceTemplateRepository;
+import org.example.repository.OrganizationRepository;
+import org.example.repository.ProjectRepository;
+import org.example.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Month-end billing run: creates a draft invoice for every billable active project in an
+ * organization, inserts them in JDBC batches and renders their PDFs on a bounded worker pool.
+ *
+ * Runs execute in the background; callers poll {@link #getBillingRun} for progress.
+ * Run state is kept in memory only, so a restart loses the status of in-flight runs
+ * (invoices already inserted stay in the database).
+ */
+@Service
+public class BillingRunService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BillingRunService.class);
+
+    // Invoices inserted per transaction; a failing chunk does not roll back earlier chunks
+    private static final int INSERT_CHUNK_SIZE = 50;
+
+    // Finished runs are kept this long so clients can still read the final status
+    private static final long FINISHED_RUN_RETENTION_HOURS = 24;
+
+    private final ProjectRepository projectRepository;
+    private final InvoiceRepository invoiceRepository;
+    private final InvoiceTemplateRepository templateRepository;
+    private final OrganizationRepository organizationRepository;
+    private final UserRepository userRepository;
+    private final InvoiceBatchRepository invoiceBatchRepository;
+    private final InvoiceService invoiceService;
+    private final InvoiceSearchService invoiceSearchService;
+    private final PdfCacheService pdfCacheService;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor billingRunExecutor;
+    private final ThreadPoolTaskExecutor billingRunPdfExecutor;
+
+    private final Map<String, BillingRun> runs = new ConcurrentHashMap<>();
+    private final Map<Long, String> activeRunByOrganization = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BillingRunService(ProjectRepository projectRepository,
+                             InvoiceRepository invoiceRepository,
+                             InvoiceTemplateRepository templateRepository,
+                             OrganizationRepository organizationRepository,
+                             UserRepository userRepository,
+                             InvoiceBatchRepository invoiceBatchRepository,
+                             InvoiceService invoiceService,
+                             InvoiceSearchService invoiceSearchService,
+                             PdfCacheService pdfCacheService,
+                             PlatformTransactionManager transactionManager,
+                             @Qualifier("billingRunExecutor") ThreadPoolTaskExecutor billingRunExecutor,
+                             @Qualifier("billingRunPdfExecutor") ThreadPoolTaskExecutor billingRunPdfExecutor) {
+        this.projectRepository = projectRepository;
+        this.invoiceRepository = invoiceRepository;
+        this.templateRepository = templateRepository;
+        this.organizationRepository = organizationRepository;
+        this.userRepository = userRepository;
+        this.invoiceBatchRepository = invoiceBatchRepository;
+        this.invoiceService = invoiceService;
+        this.invoiceSearchService = invoiceSearchService;
+        this.pdfCacheService = pdfCacheService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.billingRunExecutor = billingRunExecutor;
+        this.billingRunPdfExecutor = billingRunPdfExecutor;
+    }
+
+    /**
+     * Start a billing run in the background. Only one run per organization may be active at a time.
+     */
+    public BillingRun startBillingRun(Long organizationId, Long createdById, LocalDate issueDate,
+                                      LocalDate dueDate, Long templateId) {
+        if (!organizationRepository.existsById(organizationId)) {
+            throw new IllegalArgumentException("Organization not found with ID: " + organizationId);
+        }
+        if (issueDate == null) {
+            issueDate = LocalDate.now();
+        }
+        if (dueDate == null) {
+            dueDate = issueDate.plusDays(30); // Same default as single invoices
+        }
+        if (dueDate.isBefore(issueDate)) {
+            throw new IllegalArgumentException("Due date cannot be before issue date");
+        }
+
+        BillingRun run = new BillingRun(UUID.randomUUID().toString(), organizationId, issueDate, dueDate);
+        if (activeRunByOrganization.putIfAbsent(organizationId, run.getJobId()) != null) {
+            throw new IllegalStateException("A billing run is already in progress for this organization");
+        }
+        runs.put(run.getJobId(), run);
+
+        LocalDate runIssueDate = issueDate;
+        LocalDate runDueDate = dueDate;
+        try {
+            billingRunExecutor.execute(() -> executeBillingRun(run, createdById, templateId, runIssueDate, runDueDate));
+        } catch (TaskRejectedException e) {
+            runs.remove(run.getJobId());
+            activeRunByOrganization.remove(organizationId, run.getJobId());
+            throw new IllegalStateException("Too many billing runs are queued, please try again later");
+        }
+
+        logger.info("Billing run {} queued for organization ID: {}", run.getJobId(), organizationId);
+        return run;
+    }
+
+    /**
+     * Get a billing run, scoped to the caller's organization.
+     */
+    public BillingRun getBillingRun(String jobId, Long organizationId) {
+        BillingRun run = runs.get(jobId);
+        if (run == null || !run.getOrganizationId().equals(organizationId)) {
+            throw new IllegalArgumentException("Billing run not found: " + jobId);
+        }
+        return run;
+    }
+
+    /**
+     * Drop finished runs from memory. Runs every hour.
+     */
+    @Scheduled(fixedRate = 60 * 60 * 1000) // 1 hour in milliseconds
+    public void evictFinishedRuns() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(FINISHED_RUN_RETENTION_HOURS);
+        runs.values().removeIf(run -> run.getFinishedAt() != null && run.getFinishedAt().isBefore(cutoff));
+    }
+
+    private void executeBillingRun(BillingRun run, Long createdById, Long templateId,
+                                   LocalDate issueDate, LocalDate dueDate) {
+        run.start();
+        logger.info("Billing run {} started for organization ID: {}", run.getJobId(), run.getOrganizationId());
+
+        try {
+            List<Invoice> drafts = transactionTemplate.execute(tx ->
+                    buildDrafts(run, createdById, templateId, issueDate, dueDate));
+
+            List<CompletableFuture<Void>> renders = new ArrayList<>();
+            for (int from = 0; from < drafts.size(); from += INSERT_CHUNK_SIZE) {
+                List<Invoice> chunk = drafts.subList(from, Math.min(from + INSERT_CHUNK_SIZE, drafts.size()));
+                try {
+                    transactionTemplate.executeWithoutResult(tx -> invoiceBatchRepository.batchInsert(chunk));
+                } catch (Exception e) {
+                    logger.error("Billing run {} failed to insert {} invoices: {}",
+                            run.getJobId(), chunk.size(), e.getMessage(), e);
+                    for (Invoice invoice : chunk) {
+                        run.recordFailure(invoice, "Failed to save invoice: " + e.getMessage());
+                    }
+                    continue;
+                }
+
+                // Rendering starts as soon as a chunk is committed, overlapping with the next insert
+                for (Invoice invoice : chunk) {
+                    run.recordCreated(invoice);
+                    invoiceSearchService.invoiceSaved(invoice);
+                    renders.add(CompletableFuture.runAsync(() -> renderAndStorePdf(run, invoice), billingRunPdfExecutor));
+                }
+            }
+
+            CompletableFuture.allOf(renders.toArray(new CompletableFuture[0])).join();
+            run.finish(BillingRunState.COMPLETED, null);
+            logger.info("Billing run {} completed: {} created, {} PDFs, {} skipped, {} failed",
+                    run.getJobId(), run.getCreatedCount(), run.getPdfRenderedCount(),
+                    run.getSkippedCount(), run.getFailedCount());
+        } catch (Exception e) {
+            logger.error("Billing run {} failed: {}", run.getJobId(), e.getMessage(), e);
+            run.finish(BillingRunState.FAILED, e.getMessage());
+        } finally {
+            activeRunByOrganization.remove(run.getOrganizationId(), run.getJobId());
+        }
+    }
+
+    private List<Invoice> buildDrafts(BillingRun run, Long createdById, Long templateId,
+                                      LocalDate issueDate, LocalDate dueDate) {
+        Organization organization = organizationRepository.findById(run.getOrganizationId())
+                .orElseThrow(() -> new IllegalArgumentException("Organization not found with ID: " + run.getOrganizationId()));
+        User creator = userRepository.findById(createdById)
+                .orElseThrow(() -> new IllegalArgumentException("User not found with ID: " + createdById));
+        InvoiceTemplate template = templateId != null ? templateRepository.findById(templateId).orElse(null) : null;
+
+        List<Project> projects = projectRepository.findBillableProjectsByOrganization(organization.getId());
+        run.setTotalProjects(projects.size());
+
+        // One grouped query instead of loading every previous invoice per project
+        Map<Long, BigDecimal> billedByProject = new HashMap<>();
+        for (Object[] row : invoiceRepository.getBilledSubtotalByProject(organization.getId())) {
+            billedByProject.put((Long) row[0], (BigDecimal) row[1]);
+        }
+
+        List<Invoice> drafts = new ArrayList<>();
+        for (Project project : projects) {
+            Invoice draft = invoiceService.buildDraftInvoice(project, organization, creator, template,
+                    billedByProject.getOrDefault(project.getId(), BigDecimal.ZERO), null, issueDate, dueDate);
+            if (draft == null) {
+                run.recordSkipped();
+            } else {
+                drafts.add(draft);
+            }
+        }
+
+        List<String> numbers = invoiceService.generateInvoiceNumbers(organization, drafts.size());
+        for (int i = 0; i < drafts.size(); i++) {
+            drafts.get(i).setInvoiceNumber(numbers.get(i));
+        }
+
+        logger.info("Billing run {}: {} billable projects, {} invoices to create",
+                run.getJobId(), projects.size(), drafts.size());
+        return drafts;
+    }
+
+    private void renderAndStorePdf(BillingRun run, Invoice invoice) {
+        try {
+            // Stored under the same content key that later downloads of this invoice look up
+            String pdfUrl = pdfCacheService.storeInvoicePdf(invoice);
+            run.recordPdf(invoice, pdfUrl);
+        } catch (Exception e) {
+            logger.error("Billing run {} failed to render PDF for invoice {}: {}",
+                    run.getJobId(), invoice.getInvoiceNumber(), e.getMessage());
+            run.recordPdfFailure(invoice, "Failed to generate PDF: " + e.getMessage());
+        }
+    }
+
+    public enum BillingRunState {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    /**
+     * Progress of a single billing run. Counters are updated from the run and PDF worker threads.
+     */
+    public static class BillingRun {
+        private final String jobId;
+        private final Long organizationId;
+        private final LocalDate issueDate;
+        private final LocalDate dueDate;
+        private final LocalDateTime queuedAt = LocalDateTime.now();
+        private volatile BillingRunState state = BillingRunState.QUEUED;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+        private volatile int totalProjects;
+        private final AtomicInteger createdCount = new AtomicInteger();
+        private final AtomicInteger pdfRenderedCount = new AtomicInteger();
+        private final AtomicInteger skippedCount = new AtomicInteger();
+        private final AtomicInteger failedCount = new AtomicInteger();
+        private final Map<String, Map<String, Object>> results = new ConcurrentHashMap<>();
+
+        BillingRun(String jobId, Long organizationId, LocalDate issueDate, LocalDate dueDate) {
+            this.jobId = jobId;
+            this.organizationId = organizationId;
+            this.issueDate = issueDate;
+            this.dueDate = dueDate;
+        }
+
+        void start() {
+            state = BillingRunState.RUNNING;
+            startedAt = LocalDateTime.now();
+        }
+
+        void finish(BillingRunState finalState, String errorMessage) {
+            error = errorMessage;
+            finishedAt = LocalDateTime.now();
+            state = finalState;
+        }
+
+        void setTotalProjects(int totalProjects) {
+            this.totalProjects = totalProjects;
+        }
+
+        void recordSkipped() {
+            skippedCount.incrementAndGet();
+        }
+
+        void recordCreated(Invoice invoice) {
+            createdCount.incrementAndGet();
+            result(invoice).put("invoiceId", invoice.getId());
+        }
+
+        void recordPdf(Invoice invoice, String pdfUrl) {
+            pdfRenderedCount.incrementAndGet();
+            result(invoice).put("pdfUrl", pdfUrl);
+        }
+
+        void recordFailure(Invoice invoice, String message) {
+            failedCount.incrementAndGet();
+            result(invoice).put("error", message);
+        }
+
+        // The invoice itself was saved; only its PDF is missing and can be regenerated on demand
+        void recordPdfFailure(Invoice invoice, String message) {
+            result(invoice).put("error", message);
+        }
+
+        private Map<String, Object> result(Invoice invoice) {
+            return results.computeIfAbsent(invoice.getInvoiceNumber(), number -> {
+                Map<String, Object> result = new ConcurrentHashMap<>();
+                result.put("invoiceNumber", number);
+                result.put("projectId", invoice.getProjectId());
+                result.put("projectName", invoice.getProjectName());
+                result.put("totalAmount", invoice.getTotalAmount());
+                return result;
+            });
+        }
+
+        public String getJobId() { return jobId; }
+        public Long getOrganizationId() { return organizationId; }
+        public LocalDate getIssueDate() { return issueDate; }
+        public LocalDate getDueDate() { return dueDate; }
+        public LocalDateTime getQueuedAt() { return queuedAt; }
+        public BillingRunState getState() { return state; }
+        public LocalDateTime getStartedAt() { return startedAt; }
+        public LocalDateTime getFinishedAt() { return finishedAt; }
+        public String getError() { return error; }
+        public int getTotalProjects() { return totalProjects; }
+        public int getCreatedCount() { return createdCount.get(); }
+        public int getPdfRenderedCount() { return pdfRenderedCount.get(); }
+        public int getSkippedCount() { return skippedCount.get(); }
+        public int getFailedCount() { return failedCount.get(); }
+        public List<Map<String, Object>> getResults() { return new ArrayList<>(results.values()); }
+    }
+}
@@ -0,0 +1,242 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.example.models.EmailOutbox;
+import org.example.models.enums.EmailOutboxStatus;
+import org.example.repository.EmailOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transactional email outbox.
+ *
+ * Emails are written to the email_outbox table in the caller's transaction, so they are only
+ * sent if the business change commits, and the request never waits on SMTP. A scheduled
+ * dispatcher claims due rows in batches (SELECT ... FOR UPDATE SKIP LOCKED, so several app
+ * instances can drain the same table) and hands each batch to JavaMailSender in a single
+ * send call, which delivers the whole batch over one SMTP connection.
+ *
+ * Failed messages are retried with exponential backoff; after max-attempts they are marked
+ * DEAD and left in the table for inspection.
+ *
+ * Metrics (via Actuator /actuator/metrics):
+ *   email.outbox.sent     - delivered messages
+ *   email.outbox.retried  - failed deliveries scheduled for another attempt
+ *   email.outbox.dead     - messages that exhausted their attempts
+ */
+@Service
+public class EmailOutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailOutboxService.class);
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final EmailOutboxRepository outboxRepository;
+    private final JavaMailSender mailSender;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter deadCounter;
+
+    @Value("${app.mail.from:${spring.mail.username:noreply@example.com}}")
+    private String fromEmail;
+
+    @Value("${app.mail.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.mail.outbox.initial-backoff-seconds:30}")
+    private long initialBackoffSeconds;
+
+    @Value("${app.mail.outbox.max-backoff-seconds:3600}")
+    private long maxBackoffSeconds;
+
+    @Value("${app.mail.outbox.retention-days:7}")
+    private int retentionDays;
+
+    @Autowired
+    public EmailOutboxService(EmailOutboxRepository outboxRepository,
+                              JavaMailSender mailSender,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.mailSender = mailSender;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sentCounter = Counter.builder("email.outbox.sent")
+                .description("Emails delivered from the outbox")
+                .register(meterRegistry);
+        this.retriedCounter = Counter.builder("email.outbox.retried")
+                .description("Failed email deliveries scheduled for retry")
+                .register(meterRegistry);
+        this.deadCounter = Counter.builder("email.outbox.dead")
+                .description("Emails that exhausted their delivery attempts")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue an HTML email. Joins the caller's transaction if there is one.
+     */
+    @Transactional
+    public EmailOutbox enqueue(String toEmail, String subject, String htmlBody) {
+        return enqueue(toEmail, subject, htmlBody, null, null);
+    }
+
+    /**
+     * Queue an HTML email with an optional attachment. Joins the caller's transaction if there is one.
+     */
+    @Transactional
+    public EmailOutbox enqueue(String toEmail, String subject, String htmlBody,
+                               String attachmentName, byte[] attachmentData) {
+        // Normalize email to lowercase (RFC 5321: email addresses are case-insensitive)
+        // AWS SES treats verified identities as case-sensitive, so we normalize to match
+        String normalizedEmail = toEmail != null ? toEmail.trim().toLowerCase() : null;
+        if (normalizedEmail == null || normalizedEmail.isEmpty()) {
+            throw new IllegalArgumentException("Email address is required");
+        }
+
+        EmailOutbox email = new EmailOutbox(normalizedEmail, subject, htmlBody);
+        email.setAttachmentName(attachmentName);
+        email.setAttachmentData(attachmentData);
+        return outboxRepository.save(email);
+    }
+
+    /**
+     * Drain due emails batch by batch until a batch comes back short.
+     */
+    @Scheduled(fixedDelayString = "${app.mail.outbox.poll-interval-ms:5000}")
+    public void dispatchPending() {
+        try {
+            Integer processed;
+            do {
+                processed = transactionTemplate.execute(status -> dispatchBatch());
+            } while (processed != null && processed >= batchSize);
+        } catch (Exception e) {
+            logger.error("Email outbox dispatch failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Remove delivered emails (and their attachments) after the retention period.
+     * Runs daily at 03:30.
+     */
+    @Scheduled(cron = "0 30 3 * * *")
+    @Transactional
+    public void purgeSentEmails() {
+        int deleted = outboxRepository.deleteByStatusAndSentAtBefore(
+                EmailOutboxStatus.SENT, LocalDateTime.now().minusDays(retentionDays));
+        if (deleted > 0) {
+            logger.info("Purged {} delivered emails from the outbox", deleted);
+        }
+    }
+
+    private int dispatchBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<EmailOutbox> batch = outboxRepository.findDueForUpdate(
+                EmailOutboxStatus.PENDING, now, PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // MimeMessage uses identity equality, which is what MailSendException keys its failures by
+        Map<MimeMessage, EmailOutbox> messages = new LinkedHashMap<>();
+        for (EmailOutbox email : batch) {
+            try {
+                messages.put(buildMessage(email), email);
+            } catch (MessagingException e) {
+                recordFailure(email, e, now);
+            }
+        }
+
+        Map<Object, Exception> failures = new HashMap<>();
+        if (!messages.isEmpty()) {
+            try {
+                mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+            } catch (MailSendException e) {
+                failures.putAll(e.getFailedMessages());
+                if (failures.isEmpty()) {
+                    messages.keySet().forEach(message -> failures.put(message, e));
+                }
+            } catch (MailException e) {
+                // e.g. authentication failure: nothing in the batch was sent
+                messages.keySet().forEach(message -> failures.put(message, e));
+            }
+        }
+
+        for (Map.Entry<MimeMessage, EmailOutbox> entry : messages.entrySet()) {
+            Exception failure = failures.get(entry.getKey());
+            EmailOutbox email = entry.getValue();
+            if (failure == null) {
+                email.setStatus(EmailOutboxStatus.SENT);
+                email.setAttempts(email.getAttempts() + 1);
+                email.setSentAt(now);
+                email.setLastError(null);
+                sentCounter.increment();
+            } else {
+                recordFailure(email, failure, now);
+            }
+        }
+        outboxRepository.saveAll(batch);
+
+        logger.info("Email outbox batch: {} sent, {} failed", messages.size() - failures.size(),
+                batch.size() - messages.size() + failures.size());
+        return batch.size();
+    }
+
+    private MimeMessage buildMessage(EmailOutbox email) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+
+        helper.setFrom(fromEmail);
+        helper.setTo(email.getToEmail());
+        helper.setSubject(email.getSubject());
+        helper.setText(email.getHtmlBody(), true);
+        if (email.getAttachmentData() != null) {
+            helper.addAttachment(email.getAttachmentName(), new ByteArrayResource(email.getAttachmentData()));
+        }
+        return message;
+    }
+
+    private void recordFailure(EmailOutbox email, Exception failure, LocalDateTime now) {
+        int attempts = email.getAttempts() + 1;
+        email.setAttempts(attempts);
+        String error = failure.getMessage() != null ? failure.getMessage() : failure.getClass().getName();
+        email.setLastError(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+
+        if (attempts >= maxAttempts) {
+            email.setStatus(EmailOutboxStatus.DEAD);
+            deadCounter.increment();
+            logger.error("Giving up on email {} to {} after {} attempts: {}",
+                    email.getId(), email.getToEmail(), attempts, error);
+        } else {
+            long delaySeconds = Math.min(maxBackoffSeconds, initialBackoffSeconds << Math.min(attempts - 1, 20));
+            email.setNextAttemptAt(now.plusSeconds(delaySeconds));
+            retriedCounter.increment();
+            logger.warn("Email {} to {} failed (attempt {}), retrying in {}s: {}",
+                    email.getId(), email.getToEmail(), attempts, delaySeconds, error);
+        }
+    }
+}
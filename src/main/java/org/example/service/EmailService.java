@@ -1,5 +1,6 @@
 package org.example.service;
 
+import org.example.models.Notification;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,17 +8,24 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
 
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.core.io.ByteArrayResource;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.util.List;
 
 /**
  * Email service for sending various types of emails.
  * Configured to work with Gmail SMTP.
+ *
+ * Application emails (verification, invitation, password reset, welcome, invoice) are queued
+ * in the email outbox within the caller's transaction and delivered by EmailOutboxService.
  */
 @Service
 public class EmailService {
@@ -27,6 +35,12 @@ public class EmailService {
     @Autowired
     private JavaMailSender mailSender;
 
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
+    @Autowired
+    private ITemplateEngine templateEngine;
+
     @Value("${app.mail.from:${spring.mail.username:noreply@example.com}}")
     private String fromEmail;
 
@@ -70,9 +84,8 @@ public class EmailService {
     }
 
     /**
-     * Send organization verification email
+     * Queue organization verification email
      */
-    @Async
     public void sendVerificationEmail(String toEmail, String organizationName, String adminName, String verificationToken) {
         String subject = "Verify Your " + appName + " Account";
         String verificationLink = frontendUrl + "/verify-email?token=" + verificationToken;
@@ -85,25 +98,14 @@ public class EmailService {
         logger.info("From Email: {}", fromEmail);
         logger.info("=========================================");
         
-        try {
-            String htmlContent = buildVerificationEmailHtml(organizationName, adminName, verificationLink);
-            sendHtmlEmail(toEmail, subject, htmlContent);
-            logger.info("Verification email sent successfully to: {}", toEmail);
-        } catch (Exception e) {
-            logger.error("Failed to send verification email to {}: {}", toEmail, e.getMessage(), e);
-            logger.error("Email sending failed with exception type: {}", e.getClass().getName());
-            if (e.getCause() != null) {
-                logger.error("Root cause: {}", e.getCause().getMessage());
-            }
-            // Re-throw to allow caller to handle the failure
-            throw new RuntimeException("Failed to send verification email: " + e.getMessage(), e);
-        }
+        String htmlContent = buildVerificationEmailHtml(organizationName, adminName, verificationLink);
+        emailOutboxService.enqueue(toEmail, subject, htmlContent);
+        logger.info("Verification email queued for: {}", toEmail);
     }
 
     /**
-     * Send employee invitation email
+     * Queue employee invitation email
      */
-    @Async
     public void sendInvitationEmail(String toEmail, String organizationName, String inviterName, String invitationToken, String roleName) {
         String subject = "You're Invited to Join " + organizationName + " on " + appName;
         String invitationLink = frontendUrl + "/join?token=" + invitationToken;
@@ -117,21 +119,14 @@ public class EmailService {
         logger.info("Token: {}", invitationToken);
         logger.info("=======================================");
         
-        try {
-            String htmlContent = buildInvitationEmailHtml(organizationName, inviterName, invitationLink, roleName);
-            sendHtmlEmail(toEmail, subject, htmlContent);
-            logger.info("Invitation email sent to: {}", toEmail);
-        } catch (Exception e) {
-            logger.warn("Failed to send invitation email (check SMTP config): {}. Use the logged link above for testing.", e.getMessage());
-            // Re-throw to allow caller to handle the failure and trigger rollback
-            throw new RuntimeException("Failed to send invitation email", e);
-        }
+        String htmlContent = buildInvitationEmailHtml(organizationName, inviterName, invitationLink, roleName);
+        emailOutboxService.enqueue(toEmail, subject, htmlContent);
+        logger.info("Invitation email queued for: {}", toEmail);
     }
 
     /**
-     * Send password reset email
+     * Queue password reset email
      */
-    @Async
     public void sendPasswordResetEmail(String toEmail, String userName, String resetToken) {
         String subject = "Reset Your " + appName + " Password";
         String resetLink = frontendUrl + "/reset-password?token=" + resetToken;
@@ -144,31 +139,26 @@ public class EmailService {
         logger.info("Token: {}", resetToken);
         logger.info("===========================================");
         
-        try {
-            String htmlContent = buildPasswordResetEmailHtml(userName, resetLink);
-            sendHtmlEmail(toEmail, subject, htmlContent);
-            logger.info("Password reset email sent to: {}", toEmail);
-        } catch (Exception e) {
-            logger.warn("Failed to send password reset email (check SMTP config): {}. Use the logged link above for testing.", e.getMessage());
-        }
+        String htmlContent = buildPasswordResetEmailHtml(userName, resetLink);
+        emailOutboxService.enqueue(toEmail, subject, htmlContent);
+        logger.info("Password reset email queued for: {}", toEmail);
     }
 
     /**
-     * Send welcome email after successful verification
+     * Queue welcome email after successful verification
      */
-    @Async
     public void sendWelcomeEmail(String toEmail, String userName, String organizationName) {
         String subject = "Welcome to " + appName + "!";
         String loginLink = frontendUrl + "/login";
         
         String htmlContent = buildWelcomeEmailHtml(userName, organizationName, loginLink);
         
-        sendHtmlEmail(toEmail, subject, htmlContent);
-        logger.info("Welcome email sent to: {}", toEmail);
+        emailOutboxService.enqueue(toEmail, subject, htmlContent);
+        logger.info("Welcome email queued for: {}", toEmail);
     }
 
     /**
-     * Send invoice email with PDF attachment
+     * Queue invoice email with PDF attachment
      */
     public void sendInvoiceEmail(String toEmail, String clientName, String invoiceNumber, 
                                  String totalAmount, byte[] pdfBytes) {
@@ -176,8 +166,26 @@ public class EmailService {
         String htmlContent = buildInvoiceEmailHtml(clientName, invoiceNumber, totalAmount);
         String attachmentFileName = invoiceNumber + ".pdf";
         
-        sendEmailWithAttachment(toEmail, subject, htmlContent, pdfBytes, attachmentFileName);
-        logger.info("Invoice email sent to: {} for invoice: {}", toEmail, invoiceNumber);
+        emailOutboxService.enqueue(toEmail, subject, htmlContent, attachmentFileName, pdfBytes);
+        logger.info("Invoice email queued for: {} for invoice: {}", toEmail, invoiceNumber);
+    }
+
+    /**
+     * Queue a digest email listing the user's pending notifications
+     */
+    public void sendDigestEmail(String toEmail, String userName, List<Notification> notifications) {
+        String subject = notifications.size() == 1
+                ? "You have 1 new update on " + appName
+                : "You have " + notifications.size() + " new updates on " + appName;
+
+        Context context = emailContext();
+        context.setVariable("userName", userName);
+        context.setVariable("notifications", notifications);
+        context.setVariable("frontendUrl", frontendUrl);
+        String htmlContent = templateEngine.process("email/digest", context);
+
+        emailOutboxService.enqueue(toEmail, subject, htmlContent);
+        logger.debug("Digest email with {} notifications queued for: {}", notifications.size(), toEmail);
     }
 
     /**
@@ -293,226 +301,54 @@ public class EmailService {
     // ========================
     // Email HTML Templates
     // ========================
+    // Bodies live in templates/email/*.html. The Thymeleaf engine parses each template once and
+    // caches it (spring.thymeleaf.cache), so a send only evaluates the cached template; th:text
+    // also escapes names and other user-supplied values.
 
     private String buildVerificationEmailHtml(String organizationName, String adminName, String verificationLink) {
-        return """
-            <!DOCTYPE html>
-            <html>
-            <head>
-                <meta charset="UTF-8">
-                <style>
-                    body { font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; line-height: 1.6; color: #333; }
-                    .container { max-width: 600px; margin: 0 auto; padding: 20px; }
-                    .header { background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); color: white; padding: 30px; text-align: center; border-radius: 10px 10px 0 0; }
-                    .content { background: #f9f9f9; padding: 30px; border-radius: 0 0 10px 10px; }
-                    .button { display: inline-block; background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); color: white; padding: 15px 30px; text-decoration: none; border-radius: 5px; margin: 20px 0; font-weight: bold; }
-                    .footer { text-align: center; margin-top: 20px; color: #888; font-size: 12px; }
-                    .warning { color: #e74c3c; font-size: 14px; }
-                </style>
-            </head>
-            <body>
-                <div class="container">
-                    <div class="header">
-                        <h1>%s</h1>
-                        <p>Email Verification</p>
-                    </div>
-                    <div class="content">
-                        <h2>Hello %s,</h2>
-                        <p>Thank you for registering <strong>%s</strong> on %s!</p>
-                        <p>Please verify your email address by clicking the button below:</p>
-                        <p style="text-align: center;">
-                            <a href="%s" class="button">Verify Email Address</a>
-                        </p>
-                        <p>Or copy and paste this link into your browser:</p>
-                        <p style="word-break: break-all; background: #eee; padding: 10px; border-radius: 5px;">%s</p>
-                        <p class="warning">This link will expire in 24 hours.</p>
-                        <p>If you didn't create this account, please ignore this email.</p>
-                    </div>
-                    <div class="footer">
-                        <p>&copy; %s. All rights reserved.</p>
-                    </div>
-                </div>
-            </body>
-            </html>
-            """.formatted(appName, adminName, organizationName, appName, verificationLink, verificationLink, appName);
+        Context context = emailContext();
+        context.setVariable("organizationName", organizationName);
+        context.setVariable("adminName", adminName);
+        context.setVariable("verificationLink", verificationLink);
+        return templateEngine.process("email/verification", context);
     }
 
     private String buildInvitationEmailHtml(String organizationName, String inviterName, String invitationLink, String roleName) {
-        String displayRole = roleName.replace("ROLE_", "").replace("_", " ");
-        return """
-            <!DOCTYPE html>
-            <html>
-            <head>
-                <meta charset="UTF-8">
-                <style>
-                    body { font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; line-height: 1.6; color: #333; }
-                    .container { max-width: 600px; margin: 0 auto; padding: 20px; }
-                    .header { background: linear-gradient(135deg, #11998e 0%%, #38ef7d 100%%); color: white; padding: 30px; text-align: center; border-radius: 10px 10px 0 0; }
-                    .content { background: #f9f9f9; padding: 30px; border-radius: 0 0 10px 10px; }
-                    .button { display: inline-block; background: linear-gradient(135deg, #11998e 0%%, #38ef7d 100%%); color: white; padding: 15px 30px; text-decoration: none; border-radius: 5px; margin: 20px 0; font-weight: bold; }
-                    .footer { text-align: center; margin-top: 20px; color: #888; font-size: 12px; }
-                    .role-badge { background: #e8f5e9; color: #2e7d32; padding: 5px 15px; border-radius: 15px; display: inline-block; }
-                    .warning { color: #e74c3c; font-size: 14px; }
-                </style>
-            </head>
-            <body>
-                <div class="container">
-                    <div class="header">
-                        <h1>You're Invited! 🎉</h1>
-                        <p>Join %s</p>
-                    </div>
-                    <div class="content">
-                        <h2>Hello!</h2>
-                        <p><strong>%s</strong> has invited you to join <strong>%s</strong> on %s.</p>
-                        <p>Your role: <span class="role-badge">%s</span></p>
-                        <p>Click the button below to create your account and get started:</p>
-                        <p style="text-align: center;">
-                            <a href="%s" class="button">Accept Invitation</a>
-                        </p>
-                        <p>Or copy and paste this link into your browser:</p>
-                        <p style="word-break: break-all; background: #eee; padding: 10px; border-radius: 5px;">%s</p>
-                        <p class="warning">This invitation will expire in 7 days.</p>
-                        <p>If you weren't expecting this invitation, you can safely ignore this email.</p>
-                    </div>
-                    <div class="footer">
-                        <p>&copy; %s. All rights reserved.</p>
-                    </div>
-                </div>
-            </body>
-            </html>
-            """.formatted(organizationName, inviterName, organizationName, appName, displayRole, invitationLink, invitationLink, appName);
+        Context context = emailContext();
+        context.setVariable("organizationName", organizationName);
+        context.setVariable("inviterName", inviterName);
+        context.setVariable("invitationLink", invitationLink);
+        context.setVariable("roleName", roleName.replace("ROLE_", "").replace("_", " "));
+        return templateEngine.process("email/invitation", context);
     }
 
     private String buildPasswordResetEmailHtml(String userName, String resetLink) {
-        return """
-            <!DOCTYPE html>
-            <html>
-            <head>
-                <meta charset="UTF-8">
-                <style>
-                    body { font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; line-height: 1.6; color: #333; }
-                    .container { max-width: 600px; margin: 0 auto; padding: 20px; }
-                    .header { background: linear-gradient(135deg, #f093fb 0%%, #f5576c 100%%); color: white; padding: 30px; text-align: center; border-radius: 10px 10px 0 0; }
-                    .content { background: #f9f9f9; padding: 30px; border-radius: 0 0 10px 10px; }
-                    .button { display: inline-block; background: linear-gradient(135deg, #f093fb 0%%, #f5576c 100%%); color: white; padding: 15px 30px; text-decoration: none; border-radius: 5px; margin: 20px 0; font-weight: bold; }
-                    .footer { text-align: center; margin-top: 20px; color: #888; font-size: 12px; }
-                    .warning { color: #e74c3c; font-size: 14px; font-weight: bold; }
-                </style>
-            </head>
-            <body>
-                <div class="container">
-                    <div class="header">
-                        <h1>Password Reset</h1>
-                        <p>%s</p>
-                    </div>
-                    <div class="content">
-                        <h2>Hello %s,</h2>
-                        <p>We received a request to reset your password for your %s account.</p>
-                        <p>Click the button below to set a new password:</p>
-                        <p style="text-align: center;">
-                            <a href="%s" class="button">Reset Password</a>
-                        </p>
-                        <p>Or copy and paste this link into your browser:</p>
-                        <p style="word-break: break-all; background: #eee; padding: 10px; border-radius: 5px;">%s</p>
-                        <p class="warning">⚠️ This link will expire in 1 hour for security reasons.</p>
-                        <p>If you didn't request a password reset, please ignore this email. Your password will remain unchanged.</p>
-                    </div>
-                    <div class="footer">
-                        <p>&copy; %s. All rights reserved.</p>
-                    </div>
-                </div>
-            </body>
-            </html>
-            """.formatted(appName, userName, appName, resetLink, resetLink, appName);
+        Context context = emailContext();
+        context.setVariable("userName", userName);
+        context.setVariable("resetLink", resetLink);
+        return templateEngine.process("email/password-reset", context);
     }
 
     private String buildWelcomeEmailHtml(String userName, String organizationName, String loginLink) {
-        return """
-            <!DOCTYPE html>
-            <html>
-            <head>
-                <meta charset="UTF-8">
-                <style>
-                    body { font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; line-height: 1.6; color: #333; }
-                    .container { max-width: 600px; margin: 0 auto; padding: 20px; }
-                    .header { background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); color: white; padding: 30px; text-align: center; border-radius: 10px 10px 0 0; }
-                    .content { background: #f9f9f9; padding: 30px; border-radius: 0 0 10px 10px; }
-                    .button { display: inline-block; background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); color: white; padding: 15px 30px; text-decoration: none; border-radius: 5px; margin: 20px 0; font-weight: bold; }
-                    .footer { text-align: center; margin-top: 20px; color: #888; font-size: 12px; }
-                    .feature-list { list-style: none; padding: 0; }
-                    .feature-list li { padding: 10px 0; border-bottom: 1px solid #eee; }
-                    .feature-list li:before { content: '✓ '; color: #667eea; font-weight: bold; }
-                </style>
-            </head>
-            <body>
-                <div class="container">
-                    <div class="header">
-                        <h1>Welcome to %s! 🎉</h1>
-                        <p>Your account is now verified</p>
-                    </div>
-                    <div class="content">
-                        <h2>Hello %s,</h2>
-                        <p>Congratulations! Your email has been verified and <strong>%s</strong> is now active on %s.</p>
-                        <p>Here's what you can do next:</p>
-                        <ul class="feature-list">
-                            <li>Set up your organization profile</li>
-                            <li>Invite team members</li>
-                            <li>Create and manage projects</li>
-                            <li>Track time and attendance</li>
-                        </ul>
-                        <p style="text-align: center;">
-                            <a href="%s" class="button">Get Started</a>
-                        </p>
-                        <p>If you have any questions, feel free to reach out to our support team.</p>
-                    </div>
-                    <div class="footer">
-                        <p>&copy; %s. All rights reserved.</p>
-                    </div>
-                </div>
-            </body>
-            </html>
-            """.formatted(appName, userName, organizationName, appName, loginLink, appName);
+        Context context = emailContext();
+        context.setVariable("userName", userName);
+        context.setVariable("organizationName", organizationName);
+        context.setVariable("loginLink", loginLink);
+        return templateEngine.process("email/welcome", context);
     }
 
     private String buildInvoiceEmailHtml(String clientName, String invoiceNumber, String totalAmount) {
-        return """
-            <!DOCTYPE html>
-            <html>
-            <head>
-                <meta charset="UTF-8">
-                <style>
-                    body { font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; line-height: 1.6; color: #333; }
-                    .container { max-width: 600px; margin: 0 auto; padding: 20px; }
-                    .header { background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); color: white; padding: 30px; text-align: center; border-radius: 10px 10px 0 0; }
-                    .content { background: #f9f9f9; padding: 30px; border-radius: 0 0 10px 10px; }
-                    .invoice-info { background: white; padding: 20px; border-radius: 5px; margin: 20px 0; }
-                    .invoice-info p { margin: 5px 0; }
-                    .footer { text-align: center; margin-top: 20px; color: #888; font-size: 12px; }
-                </style>
-            </head>
-            <body>
-                <div class="container">
-                    <div class="header">
-                        <h1>Invoice %s</h1>
-                        <p>%s</p>
-                    </div>
-                    <div class="content">
-                        <h2>Hello %s,</h2>
-                        <p>Please find attached the invoice for your records.</p>
-                        <div class="invoice-info">
-                            <p><strong>Invoice Number:</strong> %s</p>
-                            <p><strong>Total Amount:</strong> %s</p>
-                        </div>
-                        <p>If you have any questions regarding this invoice, please don't hesitate to contact us.</p>
-                        <p>Thank you for your business!</p>
-                    </div>
-                    <div class="footer">
-                        <p>&copy; %s. All rights reserved.</p>
-                    </div>
-                </div>
-            </body>
-            </html>
-            """.formatted(invoiceNumber, appName, clientName, invoiceNumber, totalAmount, appName);
+        Context context = emailContext();
+        context.setVariable("clientName", clientName);
+        context.setVariable("invoiceNumber", invoiceNumber);
+        context.setVariable("totalAmount", totalAmount);
+        return templateEngine.process("email/invoice", context);
     }
-}
 
+    // Emails are rendered on the request thread when queued, so the request's locale applies
+    private Context emailContext() {
+        Context context = new Context(LocaleContextHolder.getLocale());
+        context.setVariable("appName", appName);
+        return context;
+    }
+}
@@ -48,6 +48,17 @@ public class FileStoragePathBuilder {
             DOCUMENTS, organizationId, category, userId, uuid, extension);
     }
 
+    /**
+     * Build path for a rendered PDF, keyed by a hash of its content.
+     * Format: documents/{orgId}/rendered/{category}/{contentHash}.pdf
+     *
+     * @param category Document category (e.g., "invoices", "payslips")
+     */
+    public static String buildRenderedPdfPath(Long organizationId, String category, String contentHash) {
+        return String.format("%s/%d/rendered/%s/%s.pdf",
+            DOCUMENTS, organizationId, category, contentHash);
+    }
+
     /**
      * Build path for project file.
      * Format: project-files/{orgId}/project_{projectId}/{userId}_{uuid}.{ext}
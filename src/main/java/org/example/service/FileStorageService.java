@@ -2,6 +2,14 @@ package org.example.service;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
 /**
  * Interface for file storage operations.
  * This abstraction allows for easy switching between different storage backends:
@@ -25,6 +33,31 @@ public interface FileStorageService {
      */
     String storeFile(MultipartFile file, String directory, String filename) throws FileStorageException;
 
+    /**
+     * Stores generated content (e.g. a rendered PDF) at an exact storage path.
+     * Unlike {@link #storeFile}, no unique suffix is added, so writing the same path twice overwrites it.
+     *
+     * @param content The bytes to store
+     * @param storagePath The full path within storage (e.g., "documents/2/invoices/ACME-2024-001.pdf")
+     * @param contentType The MIME type of the content
+     * @return The URL/path to access the stored file
+     * @throws FileStorageException if the content cannot be stored
+     */
+    String storeBytes(byte[] content, String storagePath, String contentType) throws FileStorageException;
+
+    /**
+     * Stores streamed content at an exact storage path without buffering it in memory.
+     * Same overwrite semantics as {@link #storeBytes}.
+     *
+     * @param content The stream to read from (not closed by this method)
+     * @param contentLength The exact number of bytes in the stream
+     * @param storagePath The full path within storage
+     * @param contentType The MIME type of the content
+     * @return The URL/path to access the stored file
+     * @throws FileStorageException if the content cannot be stored
+     */
+    String storeStream(InputStream content, long contentLength, String storagePath, String contentType) throws FileStorageException;
+
     /**
      * Deletes a file from storage.
      * 
@@ -51,6 +84,64 @@ public interface FileStorageService {
      */
     byte[] getFileBytes(String fileUrl) throws FileStorageException;
 
+    /**
+     * Opens a stream over a stored file, for copying large files without loading them into memory.
+     * The caller must close the stream.
+     *
+     * @param fileUrl The URL/path of the file
+     * @return The file content stream
+     * @throws FileStorageException if the file cannot be read
+     */
+    default InputStream getFileStream(String fileUrl) throws FileStorageException {
+        return new ByteArrayInputStream(getFileBytes(fileUrl));
+    }
+
+    /**
+     * Opens a stream over a byte range of a stored file, for partial (HTTP Range) downloads.
+     * The stream starts at {@code start}; callers read at most {@code end - start + 1} bytes
+     * and must close the stream.
+     *
+     * @param fileUrl The URL/path of the file
+     * @param start First byte to read (inclusive)
+     * @param end Last byte to read (inclusive)
+     * @return The content stream positioned at start
+     * @throws FileStorageException if the file cannot be read
+     */
+    default InputStream getFileStream(String fileUrl, long start, long end) throws FileStorageException {
+        InputStream stream = getFileStream(fileUrl);
+        try {
+            stream.skipNBytes(start);
+            return stream;
+        } catch (IOException e) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // Already failing
+            }
+            throw new FileStorageException("Failed to read file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the size, content type and version of a stored file without reading its content.
+     *
+     * @param fileUrl The URL/path of the file
+     * @return The file metadata
+     * @throws FileStorageException if the file does not exist or cannot be read
+     */
+    FileMetadata getFileMetadata(String fileUrl) throws FileStorageException;
+
+    /**
+     * Returns the file's location on the local filesystem, if this backend keeps files locally.
+     * Lets callers use FileChannel-based transfers instead of streams.
+     *
+     * @param fileUrl The URL/path of the file
+     * @return The local path, or empty for remote backends
+     */
+    default Optional<Path> getLocalPath(String fileUrl) {
+        return Optional.empty();
+    }
+
     /**
      * Gets the content type of a stored file.
      * 
@@ -69,6 +160,14 @@ public interface FileStorageService {
      */
     void validateFile(MultipartFile file, String[] allowedTypes, long maxSizeBytes) throws FileStorageException;
 
+    /**
+     * Size, content type and version of a stored file.
+     *
+     * @param eTag Quoted entity tag for the ETag header, or null if the backend has none
+     * @param lastModified Last modification time, or null if unknown
+     */
+    record FileMetadata(long contentLength, String contentType, String eTag, Instant lastModified) {}
+
     /**
      * Record to hold presigned URL response data.
      */
@@ -98,6 +197,98 @@ public interface FileStorageService {
         throw new UnsupportedOperationException("Presigned URLs not supported by this storage provider");
     }
 
+    // ========== Multipart uploads ==========
+    // Large files (e.g. CAD drawings) are uploaded by the client in parts, in parallel, straight to
+    // storage through per-part presigned URLs. An interrupted upload resumes by listing the parts
+    // already stored and sending only the missing ones.
+
+    /**
+     * Smallest part size handed out; S3 requires at least 5 MB for every part but the last.
+     */
+    long MIN_MULTIPART_PART_SIZE = 8L * 1024 * 1024;
+
+    /**
+     * S3 allows at most 10,000 parts per upload.
+     */
+    int MAX_MULTIPART_PARTS = 10_000;
+
+    /**
+     * A multipart upload in progress. Parts are numbered from 1; every part except the last is
+     * exactly partSize bytes.
+     */
+    record MultipartUpload(String uploadId, String storagePath, String fileUrl, long partSize, int partCount) {}
+
+    /**
+     * A stored part, identified by the ETag returned when it was uploaded.
+     */
+    record UploadedPart(int partNumber, String eTag) {}
+
+    /**
+     * Part size for a file of the given length: the minimum part size, or larger if needed to stay
+     * within the part limit.
+     */
+    static long multipartPartSize(long contentLength) {
+        return Math.max(MIN_MULTIPART_PART_SIZE, (contentLength + MAX_MULTIPART_PARTS - 1) / MAX_MULTIPART_PARTS);
+    }
+
+    /**
+     * Starts a multipart upload to an exact storage path.
+     *
+     * @param storagePath The full path within storage
+     * @param contentType The MIME type of the file
+     * @param contentLength The total size of the file
+     * @return The upload, with its part layout
+     * @throws FileStorageException if the upload cannot be started
+     */
+    default MultipartUpload startMultipartUpload(String storagePath, String contentType, long contentLength) {
+        throw new UnsupportedOperationException("Multipart uploads not supported by this storage provider");
+    }
+
+    /**
+     * Generates a URL the client can PUT one part's bytes to. The response carries the part's ETag header.
+     */
+    default String generatePresignedPartUrl(String storagePath, String uploadId, int partNumber) {
+        throw new UnsupportedOperationException("Multipart uploads not supported by this storage provider");
+    }
+
+    /**
+     * Stores one part of a multipart upload received by the application itself.
+     * Only needed by backends whose part URLs point back at the application.
+     *
+     * @return The part's ETag
+     */
+    default String storeUploadPart(String storagePath, String uploadId, int partNumber,
+                                   InputStream content, long contentLength) {
+        throw new UnsupportedOperationException("Parts are uploaded directly to this storage provider");
+    }
+
+    /**
+     * Lists the parts stored so far, for resuming an interrupted upload.
+     */
+    default List<UploadedPart> listUploadedParts(String storagePath, String uploadId) {
+        throw new UnsupportedOperationException("Multipart uploads not supported by this storage provider");
+    }
+
+    /**
+     * Assembles the parts into the final file.
+     *
+     * @param parts All parts of the file with the ETags returned when they were uploaded
+     * @return The URL/path to access the stored file
+     * @throws IncompleteUploadException if a part is missing or does not match its ETag, or the
+     *                                   parts do not add up to the length given when the upload was started
+     * @throws FileStorageException if the parts cannot be assembled
+     */
+    default String completeMultipartUpload(String storagePath, String uploadId, List<UploadedPart> parts) {
+        throw new UnsupportedOperationException("Multipart uploads not supported by this storage provider");
+    }
+
+    /**
+     * Discards an unfinished upload and the parts stored for it.
+     */
+    default void abortMultipartUpload(String storagePath, String uploadId) {
+        throw new UnsupportedOperationException("Multipart uploads not supported by this storage provider");
+    }
+
     /**
      * Custom exception for file storage operations.
      */
@@ -110,12 +301,13 @@ public interface FileStorageService {
             super(message, cause);
         }
     }
-}
-
-
-
-
-
-
-
 
+    /**
+     * The parts given to complete an upload do not make up the whole file.
+     */
+    class IncompleteUploadException extends FileStorageException {
+        public IncompleteUploadException(String message) {
+            super(message);
+        }
+    }
+}
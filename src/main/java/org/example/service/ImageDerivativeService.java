@@ -0,0 +1,278 @@
+package org.example.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fixed-size derivatives of uploaded images (profile photos, organization logos).
+ *
+ * Derivatives are generated in the background after upload and stored next to the original,
+ * named by a suffix: profile-images/2/user_4_abc123.png -> profile-images/2/user_4_abc123-avatar.png.
+ * List views and PDFs then load a few kilobytes instead of the full upload. An image that cannot
+ * be resized (unreadable or too large) gets a copy of the original under each derivative name, so
+ * every derivative URL resolves once generation has run. Until then FileController serves the
+ * original in its place. Formats without derivatives, such as WebP, get no derivative URLs.
+ */
+@Service
+public class ImageDerivativeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageDerivativeService.class);
+
+    private static final String FILES_PREFIX = "/api/files/";
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    // Decoded at 4 bytes per pixel, so about 100MB; a small file can declare far larger dimensions
+    private static final long MAX_PIXELS = 25_000_000L;
+
+    // {base}-{suffix}.{ext}, only under the directories that have derivatives
+    private static final Pattern DERIVATIVE_URL = Pattern.compile(
+            "^(.*/(?:" + FileStoragePathBuilder.PROFILE_IMAGES + "|" + FileStoragePathBuilder.ORGANIZATION_LOGOS + ")/.*)"
+            + "-(thumb|avatar|pdf)(\\.(?i:jpe?g|png|gif))$");
+
+    /**
+     * Derivative sizes. Images are scaled down to fit within the box, keeping their aspect ratio,
+     * and are never scaled up.
+     */
+    public enum Variant {
+        THUMBNAIL("thumb", 64, 64),
+        AVATAR("avatar", 256, 256),
+        PDF_LOGO("pdf", 600, 200);
+
+        private final String suffix;
+        private final int maxWidth;
+        private final int maxHeight;
+
+        Variant(String suffix, int maxWidth, int maxHeight) {
+            this.suffix = suffix;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+        }
+
+        public String getSuffix() {
+            return suffix;
+        }
+    }
+
+    private final FileStorageService fileStorageService;
+    private final LogoImageCache logoImageCache;
+
+    @Autowired
+    public ImageDerivativeService(FileStorageService fileStorageService, LogoImageCache logoImageCache) {
+        this.fileStorageService = fileStorageService;
+        this.logoImageCache = logoImageCache;
+    }
+
+    /**
+     * URL of an image's derivative, or null if the image format has no derivatives.
+     */
+    public static String derivativeUrl(String originalUrl, Variant variant) {
+        if (originalUrl == null || imageFormat(originalUrl) == null) {
+            return null;
+        }
+        int dot = originalUrl.lastIndexOf('.');
+        return originalUrl.substring(0, dot) + "-" + variant.getSuffix() + originalUrl.substring(dot);
+    }
+
+    /**
+     * URL of the original image a derivative URL was made from, or null if it is not a derivative URL.
+     */
+    public static String originalUrl(String derivativeUrl) {
+        if (derivativeUrl == null) {
+            return null;
+        }
+        Matcher matcher = DERIVATIVE_URL.matcher(derivativeUrl);
+        return matcher.matches() ? matcher.group(1) + matcher.group(3) : null;
+    }
+
+    /**
+     * Generates and stores the given derivatives of a just-uploaded image on the image pool.
+     * Failures are logged; the original is served in place of any derivative that is missing.
+     */
+    @Async("imageExecutor")
+    public void generateDerivatives(String originalUrl, byte[] original, Variant... variants) {
+        String format = imageFormat(originalUrl);
+        if (format == null || !originalUrl.startsWith(FILES_PREFIX)) {
+            return;
+        }
+
+        try {
+            BufferedImage image = readImage(original, originalUrl);
+
+            String contentType = fileStorageService.getContentType(originalUrl);
+            for (Variant variant : variants) {
+                byte[] bytes = image != null
+                        ? encode(scaleToFit(image, variant.maxWidth, variant.maxHeight, format), format)
+                        : original;
+                String derivativeUrl = derivativeUrl(originalUrl, variant);
+                fileStorageService.storeBytes(bytes, derivativeUrl.substring(FILES_PREFIX.length()), contentType);
+                logger.debug("Stored {} derivative of {} ({} -> {} bytes)", variant, originalUrl, original.length, bytes.length);
+            }
+
+            // PDFs may have cached the full-size logo while the derivative was being made
+            logoImageCache.invalidate(originalUrl);
+        } catch (Exception e) {
+            logger.warn("Failed to generate image derivatives for {}: {}", originalUrl, e.getMessage());
+        }
+    }
+
+    /**
+     * Generates derivatives of an image already in storage (e.g. uploaded straight to S3 with a presigned URL).
+     */
+    @Async("imageExecutor")
+    public void generateDerivatives(String originalUrl, Variant... variants) {
+        if (imageFormat(originalUrl) == null) {
+            return;
+        }
+        try {
+            generateDerivatives(originalUrl, fileStorageService.getFileBytes(originalUrl), variants);
+        } catch (Exception e) {
+            logger.warn("Failed to read {} for image derivatives: {}", originalUrl, e.getMessage());
+        }
+    }
+
+    /**
+     * Whether all the given derivatives of an image are in storage. Formats without derivatives have none missing.
+     */
+    public boolean hasDerivatives(String originalUrl, Variant... variants) {
+        if (imageFormat(originalUrl) == null || !originalUrl.startsWith(FILES_PREFIX)) {
+            return true;
+        }
+        for (Variant variant : variants) {
+            if (!fileStorageService.fileExists(derivativeUrl(originalUrl, variant))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Deletes all derivatives of an image, e.g. when it is replaced or removed. Missing ones are ignored.
+     */
+    public void deleteDerivatives(String originalUrl) {
+        if (imageFormat(originalUrl) == null) {
+            return;
+        }
+        for (Variant variant : Variant.values()) {
+            try {
+                fileStorageService.deleteFile(derivativeUrl(originalUrl, variant));
+            } catch (Exception e) {
+                logger.warn("Failed to delete {} derivative of {}: {}", variant, originalUrl, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Decodes the image after checking its declared dimensions, or returns null if it is unreadable
+     * or too large to decode safely. Such images are stored unchanged as their derivatives.
+     */
+    private static BufferedImage readImage(byte[] original, String originalUrl) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(original))) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                logger.info("Not resizing {}: image format not readable", originalUrl);
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > MAX_PIXELS) {
+                    logger.warn("Not resizing {}: {}x{} pixels exceeds the limit of {}",
+                            originalUrl, reader.getWidth(0), reader.getHeight(0), MAX_PIXELS);
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage scaleToFit(BufferedImage image, int maxWidth, int maxHeight, String format) {
+        double scale = Math.min(1.0, Math.min((double) maxWidth / image.getWidth(), (double) maxHeight / image.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        int type = "jpeg".equals(format) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+
+        // Halve repeatedly before the final step; one large bilinear step loses too much detail
+        BufferedImage current = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!"jpeg".equals(format)) {
+            if (!ImageIO.write(image, format, out)) {
+                throw new IOException("No image writer for " + format);
+            }
+            return out.toByteArray();
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    // ImageIO format name for the URL's extension, or null if derivatives are not made for it
+    private static String imageFormat(String url) {
+        if (url == null) {
+            return null;
+        }
+        String lowerUrl = url.toLowerCase(Locale.ROOT);
+        if (lowerUrl.endsWith(".jpg") || lowerUrl.endsWith(".jpeg")) {
+            return "jpeg";
+        } else if (lowerUrl.endsWith(".png")) {
+            return "png";
+        } else if (lowerUrl.endsWith(".gif")) {
+            return "gif";
+        }
+        return null;
+    }
+}
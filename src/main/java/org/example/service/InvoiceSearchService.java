@@ -0,0 +1,227 @@
+package org.example.service;
+
+import org.example.models.Invoice;
+import org.example.repository.InvoiceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram index over invoice number and client name, one per organization.
+ *
+ * Substring search with LIKE '%x%' cannot use a database index, so the invoice search box
+ * resolves matching invoice IDs here and the database only fetches those rows by primary key.
+ * The index is built at startup and kept current by InvoiceService after each commit.
+ * Until the initial build has finished, search() returns null and callers fall back to LIKE.
+ */
+@Service
+public class InvoiceSearchService implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceSearchService.class);
+
+    private static final int GRAM_SIZE = 3;
+
+    private final InvoiceRepository invoiceRepository;
+    private final Map<Long, OrganizationIndex> indexes = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+
+    @Autowired
+    public InvoiceSearchService(InvoiceRepository invoiceRepository) {
+        this.invoiceRepository = invoiceRepository;
+    }
+
+    @Override
+    public void run(String... args) {
+        long start = System.currentTimeMillis();
+        List<Object[]> rows = invoiceRepository.findAllSearchFields();
+        for (Object[] row : rows) {
+            // Entries written by live updates during the build are newer than this snapshot
+            indexFor((Long) row[1]).put((Long) row[0], (String) row[2], (String) row[3], false);
+        }
+        ready = true;
+        logger.info("Invoice search index built: {} invoices in {} organizations ({} ms)",
+                rows.size(), indexes.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Find IDs of invoices in an organization whose number or client name contains the search text.
+     *
+     * @return matching IDs, or null if the index is not ready yet
+     */
+    public Set<Long> search(Long organizationId, String search) {
+        if (!ready) {
+            return null;
+        }
+        OrganizationIndex index = indexes.get(organizationId);
+        if (index == null) {
+            return new HashSet<>();
+        }
+        return index.search(normalize(search));
+    }
+
+    /**
+     * Index a saved invoice. Applied after the surrounding transaction commits, if there is one.
+     */
+    public void invoiceSaved(Invoice invoice) {
+        Long organizationId = invoice.getOrganizationId();
+        Long invoiceId = invoice.getId();
+        String invoiceNumber = invoice.getInvoiceNumber();
+        String clientName = invoice.getClientName();
+        afterCommit(() -> indexFor(organizationId).put(invoiceId, invoiceNumber, clientName, true));
+    }
+
+    /**
+     * Remove a deleted invoice. Applied after the surrounding transaction commits, if there is one.
+     */
+    public void invoiceDeleted(Invoice invoice) {
+        Long organizationId = invoice.getOrganizationId();
+        Long invoiceId = invoice.getId();
+        afterCommit(() -> {
+            OrganizationIndex index = indexes.get(organizationId);
+            if (index != null) {
+                index.remove(invoiceId);
+            }
+        });
+    }
+
+    private OrganizationIndex indexFor(Long organizationId) {
+        return indexes.computeIfAbsent(organizationId, id -> new OrganizationIndex());
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase();
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_SIZE));
+        }
+        return grams;
+    }
+
+    /**
+     * Posting lists for one organization. Searches take the read lock, writes the write lock.
+     */
+    private static class OrganizationIndex {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, String[]> documents = new HashMap<>();
+        private final Map<String, Set<Long>> postings = new HashMap<>();
+
+        void put(Long invoiceId, String invoiceNumber, String clientName, boolean replace) {
+            String[] fields = { normalize(invoiceNumber), normalize(clientName) };
+            lock.writeLock().lock();
+            try {
+                if (documents.containsKey(invoiceId)) {
+                    if (!replace) {
+                        return;
+                    }
+                    removeLocked(invoiceId);
+                }
+                documents.put(invoiceId, fields);
+                for (String field : fields) {
+                    for (String gram : grams(field)) {
+                        postings.computeIfAbsent(gram, g -> new HashSet<>()).add(invoiceId);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(Long invoiceId) {
+            lock.writeLock().lock();
+            try {
+                removeLocked(invoiceId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void removeLocked(Long invoiceId) {
+            String[] fields = documents.remove(invoiceId);
+            if (fields == null) {
+                return;
+            }
+            for (String field : fields) {
+                for (String gram : grams(field)) {
+                    Set<Long> ids = postings.get(gram);
+                    if (ids != null) {
+                        ids.remove(invoiceId);
+                        if (ids.isEmpty()) {
+                            postings.remove(gram);
+                        }
+                    }
+                }
+            }
+        }
+
+        Set<Long> search(String query) {
+            lock.readLock().lock();
+            try {
+                // Too short for trigrams: scan the organization's documents directly
+                if (query.length() < GRAM_SIZE) {
+                    return verify(documents.keySet(), query);
+                }
+
+                // Intersect posting lists, smallest first
+                List<Set<Long>> lists = new ArrayList<>();
+                for (String gram : grams(query)) {
+                    Set<Long> ids = postings.get(gram);
+                    if (ids == null) {
+                        return new HashSet<>();
+                    }
+                    lists.add(ids);
+                }
+                lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+                Set<Long> candidates = new HashSet<>(lists.get(0));
+                for (int i = 1; i < lists.size() && !candidates.isEmpty(); i++) {
+                    candidates.retainAll(lists.get(i));
+                }
+
+                // Shared trigrams do not guarantee a contiguous match
+                return verify(candidates, query);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private Set<Long> verify(Set<Long> candidates, String query) {
+            Set<Long> matches = new HashSet<>();
+            for (Long id : candidates) {
+                String[] fields = documents.get(id);
+                if (fields != null && (fields[0].contains(query) || fields[1].contains(query))) {
+                    matches.add(id);
+                }
+            }
+            return matches;
+        }
+    }
+}
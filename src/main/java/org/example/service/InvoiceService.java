@@ -1,6 +1,7 @@
 package org.example.service;
 
 import org.example.models.*;
+import org.example.models.enums.InvoiceItemType;
 import org.example.models.enums.InvoiceStatus;
 import org.example.repository.InvoiceRepository;
 import org.example.repository.InvoiceItemRepository;
@@ -17,9 +18,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.text.NumberFormat;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @Transactional
@@ -27,12 +32,17 @@ public class InvoiceService {
 
     private static final Logger logger = LoggerFactory.getLogger(InvoiceService.class);
 
+    // Broader searches (e.g. a single letter) fall back to the LIKE query instead of a huge IN list
+    private static final int MAX_INDEXED_SEARCH_IDS = 1000;
+
     private final InvoiceRepository invoiceRepository;
     private final InvoiceItemRepository invoiceItemRepository;
     private final InvoiceTemplateRepository templateRepository;
     private final OrganizationRepository organizationRepository;
     private final ProjectRepository projectRepository;
     private final UserRepository userRepository;
+    private final InvoiceSearchService invoiceSearchService;
+    private final EmailService emailService;
 
     @Autowired
     public InvoiceService(InvoiceRepository invoiceRepository,
@@ -40,13 +50,17 @@ public class InvoiceService {
                          InvoiceTemplateRepository templateRepository,
                          OrganizationRepository organizationRepository,
                          ProjectRepository projectRepository,
-                         UserRepository userRepository) {
+                         UserRepository userRepository,
+                         InvoiceSearchService invoiceSearchService,
+                         EmailService emailService) {
         this.invoiceRepository = invoiceRepository;
         this.invoiceItemRepository = invoiceItemRepository;
         this.templateRepository = templateRepository;
         this.organizationRepository = organizationRepository;
         this.projectRepository = projectRepository;
         this.userRepository = userRepository;
+        this.invoiceSearchService = invoiceSearchService;
+        this.emailService = emailService;
     }
 
     // Create new invoice
@@ -118,6 +132,7 @@ public class InvoiceService {
         }
 
         Invoice savedInvoice = invoiceRepository.save(invoice);
+        invoiceSearchService.invoiceSaved(savedInvoice);
         logger.info("Invoice created successfully with ID: {} and number: {}", 
                    savedInvoice.getId(), savedInvoice.getInvoiceNumber());
 
@@ -159,6 +174,7 @@ public class InvoiceService {
         }
 
         Invoice savedInvoice = invoiceRepository.save(existingInvoice);
+        invoiceSearchService.invoiceSaved(savedInvoice);
         logger.info("Invoice updated successfully: {}", savedInvoice.getInvoiceNumber());
 
         return savedInvoice;
@@ -208,6 +224,7 @@ public class InvoiceService {
         }
 
         Invoice savedInvoice = invoiceRepository.save(existingInvoice);
+        invoiceSearchService.invoiceSaved(savedInvoice);
         logger.info("Invoice updated successfully with project: {}", savedInvoice.getInvoiceNumber());
 
         return savedInvoice;
@@ -274,6 +291,24 @@ public class InvoiceService {
         }
 
         String searchLower = (search != null && !search.trim().isEmpty()) ? search.trim().toLowerCase() : null;
+
+        // Resolve the search text through the in-memory index and fetch matches by ID
+        if (searchLower != null) {
+            Set<Long> matchingIds = invoiceSearchService.search(organizationId, searchLower);
+            if (matchingIds != null && matchingIds.size() <= MAX_INDEXED_SEARCH_IDS) {
+                if (matchingIds.isEmpty()) {
+                    return Page.empty(pageable);
+                }
+                return invoiceRepository.findByOrganizationAndFiltersAndIdIn(
+                        organization,
+                        status,
+                        projectId,
+                        overdue != null ? overdue : false,
+                        LocalDate.now(),
+                        matchingIds,
+                        pageable);
+            }
+        }
         
         // Use the unified repository query
         return invoiceRepository.findByOrganizationAndFilters(
@@ -324,6 +359,22 @@ public class InvoiceService {
         return savedInvoice;
     }
 
+    // Mark invoice as sent and queue the email in the same transaction
+    public Invoice sendInvoice(Long invoiceId, Long organizationId, byte[] pdfBytes) {
+        Invoice invoice = updateInvoiceStatus(invoiceId, organizationId, InvoiceStatus.SENT);
+
+        NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("en", "IN"));
+        emailService.sendInvoiceEmail(
+            invoice.getClientEmail(),
+            invoice.getClientName(),
+            invoice.getInvoiceNumber(),
+            currencyFormatter.format(invoice.getTotalAmount()),
+            pdfBytes
+        );
+
+        return invoice;
+    }
+
     // Record payment - Full payment only
     public Invoice recordPayment(Long invoiceId, Long organizationId, BigDecimal paymentAmount, LocalDate paymentDate) {
         Invoice invoice = findInvoiceByIdAndOrganization(invoiceId, organizationId);
@@ -359,9 +410,66 @@ public class InvoiceService {
         }
 
         invoiceRepository.delete(invoice);
+        invoiceSearchService.invoiceDeleted(invoice);
         logger.info("Invoice deleted: {}", invoice.getInvoiceNumber());
     }
 
+    /**
+     * Build an unsaved draft invoice billing a project's cumulative stage fee less what has already
+     * been billed. Used by billing runs, which persist drafts in batches instead of one by one.
+     * Returns null when there is nothing left to bill for the project's current stage.
+     */
+    @Transactional(readOnly = true)
+    public Invoice buildDraftInvoice(Project project, Organization organization, User creator,
+                                     InvoiceTemplate template, BigDecimal previouslyBilled,
+                                     String invoiceNumber, LocalDate issueDate, LocalDate dueDate) {
+        Invoice invoice = new Invoice(invoiceNumber, organization, project.getClient().getName(), issueDate, dueDate);
+        invoice.setProject(project);
+        invoice.setCreatedBy(creator);
+        invoice.setTemplate(template);
+        invoice.setStatus(InvoiceStatus.DRAFT);
+        invoice.setClientEmail(project.getClient().getEmail());
+        invoice.setClientAddress(project.getClient().getBillingAddress());
+
+        applyCumulativeFees(invoice, project, previouslyBilled);
+        if (invoice.getCumulativeFeeAmount() == null) {
+            return null;
+        }
+
+        BigDecimal amountDue = invoice.getCumulativeFeeAmount().subtract(invoice.getPreviouslyBilledAmount());
+        if (amountDue.compareTo(BigDecimal.ZERO) <= 0) {
+            return null;
+        }
+
+        determineGstRates(invoice, organization, project.getClient());
+
+        String description = String.format("%s - %s (cumulative %s%% of fee)",
+                project.getName(), project.getProjectStage().getDisplayName(),
+                invoice.getCumulativeFeePercentage().stripTrailingZeros().toPlainString());
+        invoice.addItem(new InvoiceItem(description, InvoiceItemType.FIXED_PRICE, BigDecimal.ONE, amountDue));
+
+        return invoice;
+    }
+
+    /**
+     * Reserve a block of consecutive invoice numbers with a single sequence lookup.
+     * Callers must insert them in the same order; the unique constraint on invoice_number
+     * rejects the batch if another invoice took one of the numbers in the meantime.
+     */
+    @Transactional(readOnly = true)
+    public List<String> generateInvoiceNumbers(Organization organization, int count) {
+        String prefix = generateOrgCode(organization.getName()) + "-" + LocalDate.now().getYear() + "-";
+
+        Integer maxSequence = invoiceRepository.findMaxSequenceByOrganizationAndPrefix(organization, prefix);
+        int nextSequence = (maxSequence != null ? maxSequence : 0) + 1;
+
+        List<String> numbers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            numbers.add(prefix + String.format("%03d", nextSequence + i));
+        }
+        return numbers;
+    }
+
     // Generate invoice number
     private String generateInvoiceNumber(Organization organization) {
         String orgCode = generateOrgCode(organization.getName());
@@ -463,7 +571,18 @@ public class InvoiceService {
             .map(Invoice::getSubtotal)
             .reduce(BigDecimal.ZERO, BigDecimal::add);
 
-        invoice.setPreviouslyBilledAmount(previouslyBilled);
+        applyCumulativeFees(invoice, project, previouslyBilled);
+    }
+
+    /**
+     * Set previously billed and cumulative fee fields from an already-known billed total
+     */
+    private void applyCumulativeFees(Invoice invoice, Project project, BigDecimal previouslyBilled) {
+        if (project.getBudget() == null) {
+            return;
+        }
+
+        invoice.setPreviouslyBilledAmount(previouslyBilled != null ? previouslyBilled : BigDecimal.ZERO);
 
         // Calculate cumulative fee percentage based on project stage
         BigDecimal cumulativePercentage = calculateCumulativePercentageForStage(project.getProjectStage());
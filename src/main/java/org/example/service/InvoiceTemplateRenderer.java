@@ -0,0 +1,491 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.itextpdf.html2pdf.ConverterProperties;
+import com.itextpdf.html2pdf.HtmlConverter;
+import com.itextpdf.html2pdf.resolver.font.DefaultFontProvider;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.font.FontProvider;
+import com.itextpdf.layout.font.FontSet;
+import org.example.models.Invoice;
+import org.example.models.InvoiceItem;
+import org.example.models.InvoiceTemplate;
+import org.example.models.Organization;
+import org.example.repository.InvoiceTemplateRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders invoices from the HTML templates stored in InvoiceTemplate, using html2pdf.
+ *
+ * Templates use {{field}}, {{#if field}}...{{else}}...{{/if}} placeholders. Each template is
+ * parsed once into a list of nodes and cached by ID until it is edited, so rendering only
+ * fills in values. Line items and totals are not templated; they are generated between the
+ * header and footer using the invoice-table and invoice-totals CSS classes.
+ *
+ * Fonts are registered once into a shared FontSet. FontProvider itself keeps an unsynchronized
+ * font selection cache, so each rendering thread reuses its own FontProvider and
+ * ConverterProperties over that FontSet instead of building them per document.
+ */
+@Service
+public class InvoiceTemplateRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceTemplateRenderer.class);
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd-MMM-yyyy");
+
+    private final InvoiceTemplateRepository templateRepository;
+    private final LogoImageCache logoImageCache;
+
+    private final FontSet fontSet;
+    private final ThreadLocal<ConverterProperties> converterProperties;
+
+    // template ID -> compiled template (empty if the template has no HTML or does not parse)
+    private final Cache<Long, Optional<CompiledTemplate>> compiledTemplates = Caffeine.newBuilder()
+            .maximumSize(200)
+            .build();
+
+    // organization ID -> default template ID
+    private final Cache<Long, Optional<Long>> defaultTemplateIds = Caffeine.newBuilder()
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .maximumSize(1000)
+            .build();
+
+    @Autowired
+    public InvoiceTemplateRenderer(InvoiceTemplateRepository templateRepository, LogoImageCache logoImageCache) {
+        this.templateRepository = templateRepository;
+        this.logoImageCache = logoImageCache;
+
+        long start = System.currentTimeMillis();
+        this.fontSet = new DefaultFontProvider(true, true, false).getFontSet();
+        logger.info("Registered fonts for HTML invoice templates ({} ms)", System.currentTimeMillis() - start);
+
+        this.converterProperties = ThreadLocal.withInitial(() ->
+                new ConverterProperties().setFontProvider(new FontProvider(fontSet)));
+    }
+
+    /**
+     * Resolve the template an invoice is rendered with: its own template, or else the
+     * organization's default.
+     *
+     * @return the compiled template, or null if there is none with HTML content
+     */
+    public CompiledTemplate resolve(Invoice invoice) {
+        Long templateId = invoice.getTemplateId();
+        if (templateId == null) {
+            templateId = defaultTemplateIds.get(invoice.getOrganization().getId(), this::findDefaultTemplateId)
+                    .orElse(null);
+        }
+        if (templateId == null) {
+            return null;
+        }
+        return compiledTemplates.get(templateId, this::compile).orElse(null);
+    }
+
+    /**
+     * Render the invoice with a template from {@link #resolve(Invoice)}.
+     * The stream is flushed but not closed.
+     */
+    public void render(Invoice invoice, CompiledTemplate template, OutputStream out) {
+        Map<String, String> values = buildValues(invoice);
+
+        StringBuilder html = new StringBuilder(8192);
+        html.append("<!DOCTYPE html><html><head><meta charset=\"UTF-8\"><style>");
+        html.append(template.css);
+        html.append("</style></head><body>");
+        template.header.render(values, html);
+        appendLineItems(html, invoice);
+        appendTotals(html, invoice);
+        template.footer.render(values, html);
+        html.append("</body></html>");
+
+        try {
+            PdfWriter writer = new PdfWriter(out);
+            writer.setCloseStream(false);
+            HtmlConverter.convertToPdf(html.toString(), new PdfDocument(writer), converterProperties.get());
+            out.flush();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to render invoice template " + template.getId(), e);
+        }
+    }
+
+    /**
+     * Check that a template's header and footer placeholders parse, so malformed markup is
+     * rejected when the template is saved rather than when an invoice is rendered.
+     *
+     * @throws InvalidTemplateException naming the part that does not parse and why
+     */
+    public void validate(String headerHtml, String footerHtml) {
+        try {
+            Fragment.parse(headerHtml);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidTemplateException("Invalid header template: " + e.getMessage());
+        }
+        try {
+            Fragment.parse(footerHtml);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidTemplateException("Invalid footer template: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drop cached state for a template after it is created, edited or deleted.
+     * Applied after the surrounding transaction commits, if there is one, so the old
+     * version cannot be recompiled in between.
+     */
+    public void invalidate(Long templateId) {
+        Runnable invalidation = () -> {
+            if (templateId != null) {
+                compiledTemplates.invalidate(templateId);
+            }
+            // The organization defaults may have moved
+            defaultTemplateIds.invalidateAll();
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
+        } else {
+            invalidation.run();
+        }
+    }
+
+    private Optional<Long> findDefaultTemplateId(Long organizationId) {
+        Optional<InvoiceTemplate> template = templateRepository.findByIsDefaultTrueAndOrganization_Id(organizationId);
+        if (template.isEmpty()) {
+            template = templateRepository.findByIsDefaultTrueAndOrganizationIsNull();
+        }
+        return template.map(InvoiceTemplate::getId);
+    }
+
+    private Optional<CompiledTemplate> compile(Long templateId) {
+        return templateRepository.findById(templateId)
+                .filter(t -> hasText(t.getHeaderHtml()) || hasText(t.getFooterHtml()))
+                .flatMap(t -> {
+                    logger.info("Compiling invoice template {} ({})", t.getId(), t.getTemplateCode());
+                    try {
+                        return Optional.of(new CompiledTemplate(t.getId(), String.valueOf(t.getUpdatedAt()),
+                                Fragment.parse(t.getHeaderHtml()), Fragment.parse(t.getFooterHtml()),
+                                t.getCssStyles() != null ? t.getCssStyles() : ""));
+                    } catch (IllegalArgumentException e) {
+                        // Saved before templates were validated; cached as empty so it is not re-parsed per invoice
+                        logger.warn("Invoice template {} does not parse, using the built-in layout: {}",
+                                t.getId(), e.getMessage());
+                        return Optional.empty();
+                    }
+                });
+    }
+
+    private Map<String, String> buildValues(Invoice invoice) {
+        Organization org = invoice.getOrganization();
+        Map<String, String> values = new HashMap<>();
+
+        String logo = logoImageCache.getLogoDataUri(org.getLogoUrl());
+        if (logo == null) {
+            logo = logoImageCache.getClasspathImageDataUri(PdfService.DEFAULT_LOGO_PATH);
+        }
+        values.put("organizationLogo", logo);
+        values.put("organizationName", org.getName());
+        values.put("organizationAddress", org.getAddress());
+        values.put("organizationAddressLine1", org.getAddressLine1());
+        values.put("organizationAddressLine2", org.getAddressLine2());
+        values.put("organizationCity", org.getCity());
+        values.put("organizationState", org.getState());
+        values.put("organizationPincode", org.getPincode());
+        values.put("organizationPhone", org.getContactPhone());
+        values.put("organizationEmail", org.getContactEmail());
+        values.put("organizationGstin", org.getGstin());
+        values.put("organizationPan", org.getPan());
+        values.put("organizationCoaRegNumber", org.getCoaRegNumber());
+        values.put("bankName", org.getBankName());
+        values.put("bankAccountNumber", org.getBankAccountNumber());
+        values.put("bankIfsc", org.getBankIfsc());
+        values.put("bankBranch", org.getBankBranch());
+        values.put("bankAccountName", org.getBankAccountName());
+
+        values.put("invoiceNumber", invoice.getInvoiceNumber());
+        values.put("status", invoice.getStatus() != null ? invoice.getStatus().getDisplayName() : null);
+        values.put("issueDate", invoice.getIssueDate().format(DATE_FORMATTER));
+        values.put("dueDate", invoice.getDueDate().format(DATE_FORMATTER));
+        values.put("paymentDays", String.valueOf(ChronoUnit.DAYS.between(invoice.getIssueDate(), invoice.getDueDate())));
+        values.put("clientName", invoice.getClientName());
+        values.put("clientEmail", invoice.getClientEmail());
+        values.put("clientPhone", invoice.getClientPhone());
+        values.put("clientAddress", invoice.getClientAddress());
+        values.put("notes", invoice.getNotes());
+        values.put("termsAndConditions", invoice.getTermsAndConditions());
+        values.put("subtotal", formatCurrency(invoice.getSubtotal()));
+        values.put("totalAmount", formatCurrency(invoice.getTotalAmount()));
+        values.put("balanceAmount", formatCurrency(invoice.getBalanceAmount()));
+
+        if (invoice.getProject() != null) {
+            values.put("projectName", invoice.getProject().getName());
+            values.put("projectLocation", invoice.getProject().getLocation());
+            if (invoice.getProject().getStartDate() != null) {
+                values.put("agreementDate", invoice.getProject().getStartDate().format(DATE_FORMATTER));
+            }
+            if (invoice.getProject().getClient() != null) {
+                values.put("clientGstin", invoice.getProject().getClient().getGstin());
+            }
+        }
+        return values;
+    }
+
+    private void appendLineItems(StringBuilder html, Invoice invoice) {
+        html.append("<table class=\"invoice-table\"><thead><tr>")
+            .append("<th>Description</th><th style=\"text-align: right;\">Quantity</th>")
+            .append("<th style=\"text-align: right;\">Unit Price</th><th style=\"text-align: right;\">Amount</th>")
+            .append("</tr></thead><tbody>");
+        for (InvoiceItem item : invoice.getItems()) {
+            html.append("<tr><td>").append(escape(item.getDescription())).append("</td>")
+                .append("<td style=\"text-align: right;\">").append(formatNumber(item.getQuantity())).append("</td>")
+                .append("<td style=\"text-align: right;\">").append(escape(formatCurrency(item.getUnitPrice()))).append("</td>")
+                .append("<td style=\"text-align: right;\">").append(escape(formatCurrency(item.getAmount()))).append("</td></tr>");
+        }
+        html.append("</tbody></table>");
+    }
+
+    private void appendTotals(StringBuilder html, Invoice invoice) {
+        html.append("<div class=\"invoice-totals\"><table>");
+        appendTotalRow(html, "Total Taxable Value:", invoice.getSubtotal(), false);
+
+        // GST - Show CGST/SGST or IGST based on what's applied
+        boolean hasGst = false;
+        if (isPositive(invoice.getCgstRate())) {
+            hasGst = true;
+            appendTotalRow(html, "Add: CGST @ " + formatNumber(invoice.getCgstRate()) + "%:", invoice.getCgstAmount(), false);
+        }
+        if (isPositive(invoice.getSgstRate())) {
+            hasGst = true;
+            appendTotalRow(html, "Add: SGST @ " + formatNumber(invoice.getSgstRate()) + "%:", invoice.getSgstAmount(), false);
+        }
+        if (isPositive(invoice.getIgstRate())) {
+            hasGst = true;
+            appendTotalRow(html, "Add: IGST @ " + formatNumber(invoice.getIgstRate()) + "%:", invoice.getIgstAmount(), false);
+        }
+        if (!hasGst && isPositive(invoice.getTaxRate())) {
+            appendTotalRow(html, "Tax (" + formatNumber(invoice.getTaxRate()) + "%):", invoice.getTaxAmount(), false);
+        }
+
+        appendTotalRow(html, "GRAND TOTAL:", invoice.getTotalAmount(), true);
+        if (isPositive(invoice.getPaidAmount())) {
+            appendTotalRow(html, "Paid:", invoice.getPaidAmount(), false);
+            appendTotalRow(html, "Balance Due:", invoice.getBalanceAmount(), true);
+        }
+        html.append("</table></div>");
+    }
+
+    private void appendTotalRow(StringBuilder html, String label, BigDecimal amount, boolean total) {
+        html.append(total ? "<tr class=\"total-row\">" : "<tr>")
+            .append("<td>").append(escape(label)).append("</td>")
+            .append("<td style=\"text-align: right;\">").append(escape(formatCurrency(amount))).append("</td></tr>");
+    }
+
+    private static boolean isPositive(BigDecimal value) {
+        return value != null && value.compareTo(BigDecimal.ZERO) > 0;
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+
+    private static String formatCurrency(BigDecimal amount) {
+        // NumberFormat is not thread-safe, and templates render on several threads at once
+        return amount != null ? NumberFormat.getCurrencyInstance(new Locale("en", "IN")).format(amount) : "₹0.00";
+    }
+
+    private static String formatNumber(BigDecimal number) {
+        return number != null ? number.stripTrailingZeros().toPlainString() : "0";
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '&' -> escaped.append("&amp;");
+                case '"' -> escaped.append("&quot;");
+                case '\'' -> escaped.append("&#39;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * A template whose placeholders do not parse.
+     */
+    public static class InvalidTemplateException extends IllegalArgumentException {
+        public InvalidTemplateException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A template parsed and ready to render. The version changes whenever the template is edited.
+     */
+    public static final class CompiledTemplate {
+        private final Long id;
+        private final String version;
+        private final Fragment header;
+        private final Fragment footer;
+        private final String css;
+
+        private CompiledTemplate(Long id, String version, Fragment header, Fragment footer, String css) {
+            this.id = id;
+            this.version = version;
+            this.header = header;
+            this.footer = footer;
+            this.css = css;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * Parsed HTML with placeholders: literal text, {{field}} values (HTML-escaped) and
+     * {{#if field}} blocks, which render when the field is present and not blank.
+     */
+    private static final class Fragment {
+        private final List<Node> nodes;
+
+        private Fragment(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        void render(Map<String, String> values, StringBuilder out) {
+            for (Node node : nodes) {
+                node.render(values, out);
+            }
+        }
+
+        static Fragment parse(String source) {
+            List<Node> root = new ArrayList<>();
+            if (source == null) {
+                return new Fragment(root);
+            }
+
+            // Open {{#if}} blocks; each entry is the list currently being filled for that block
+            List<IfNode> openBlocks = new ArrayList<>();
+            List<Node> current = root;
+            int pos = 0;
+            while (pos < source.length()) {
+                int open = source.indexOf("{{", pos);
+                if (open < 0) {
+                    current.add(new TextNode(source.substring(pos)));
+                    break;
+                }
+                int close = source.indexOf("}}", open + 2);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed placeholder at position " + open);
+                }
+                if (open > pos) {
+                    current.add(new TextNode(source.substring(pos, open)));
+                }
+
+                String tag = source.substring(open + 2, close).trim();
+                if (tag.startsWith("#if ")) {
+                    IfNode block = new IfNode(tag.substring(4).trim());
+                    current.add(block);
+                    openBlocks.add(block);
+                    current = block.whenPresent;
+                } else if (tag.equals("else")) {
+                    if (openBlocks.isEmpty()) {
+                        throw new IllegalArgumentException("{{else}} outside {{#if}} at position " + open);
+                    }
+                    IfNode block = openBlocks.get(openBlocks.size() - 1);
+                    block.inElse = true;
+                    current = block.whenAbsent;
+                } else if (tag.equals("/if")) {
+                    if (openBlocks.isEmpty()) {
+                        throw new IllegalArgumentException("Unmatched {{/if}} at position " + open);
+                    }
+                    openBlocks.remove(openBlocks.size() - 1);
+                    current = openBlocks.isEmpty() ? root : openBlocks.get(openBlocks.size() - 1).current();
+                } else {
+                    current.add(new ValueNode(tag));
+                }
+                pos = close + 2;
+            }
+
+            if (!openBlocks.isEmpty()) {
+                throw new IllegalArgumentException("Unclosed {{#if " + openBlocks.get(0).field + "}}");
+            }
+            return new Fragment(root);
+        }
+    }
+
+    private interface Node {
+        void render(Map<String, String> values, StringBuilder out);
+    }
+
+    private record TextNode(String text) implements Node {
+        @Override
+        public void render(Map<String, String> values, StringBuilder out) {
+            out.append(text);
+        }
+    }
+
+    private record ValueNode(String field) implements Node {
+        @Override
+        public void render(Map<String, String> values, StringBuilder out) {
+            out.append(escape(values.get(field)));
+        }
+    }
+
+    private static final class IfNode implements Node {
+        private final String field;
+        private final List<Node> whenPresent = new ArrayList<>();
+        private final List<Node> whenAbsent = new ArrayList<>();
+        private boolean inElse = false;
+
+        IfNode(String field) {
+            this.field = field;
+        }
+
+        /** The branch that nested content returns to once an inner block closes. */
+        List<Node> current() {
+            return inElse ? whenAbsent : whenPresent;
+        }
+
+        @Override
+        public void render(Map<String, String> values, StringBuilder out) {
+            List<Node> branch = hasText(values.get(field)) ? whenPresent : whenAbsent;
+            for (Node node : branch) {
+                node.render(values, out);
+            }
+        }
+    }
+}
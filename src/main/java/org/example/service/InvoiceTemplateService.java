@@ -20,12 +20,15 @@ public class InvoiceTemplateService {
 
     private final InvoiceTemplateRepository templateRepository;
     private final OrganizationRepository organizationRepository;
+    private final InvoiceTemplateRenderer templateRenderer;
 
     @Autowired
     public InvoiceTemplateService(InvoiceTemplateRepository templateRepository, 
-                                  OrganizationRepository organizationRepository) {
+                                  OrganizationRepository organizationRepository,
+                                  InvoiceTemplateRenderer templateRenderer) {
         this.templateRepository = templateRepository;
         this.organizationRepository = organizationRepository;
+        this.templateRenderer = templateRenderer;
     }
 
     @Transactional(readOnly = true)
@@ -69,6 +72,8 @@ public class InvoiceTemplateService {
 
     @Transactional
     public InvoiceTemplate createTemplate(InvoiceTemplate template) {
+        templateRenderer.validate(template.getHeaderHtml(), template.getFooterHtml());
+
         // If this is set as default, unset other defaults
         if (Boolean.TRUE.equals(template.getIsDefault())) {
             if (template.getOrganization() != null) {
@@ -85,13 +90,16 @@ public class InvoiceTemplateService {
                     });
             }
         }
-        return templateRepository.save(template);
+        InvoiceTemplate saved = templateRepository.save(template);
+        templateRenderer.invalidate(saved.getId());
+        return saved;
     }
 
     @Transactional
     public InvoiceTemplate updateTemplate(Long id, InvoiceTemplate templateData) {
         InvoiceTemplate template = templateRepository.findById(id)
             .orElseThrow(() -> new IllegalArgumentException("Template not found with ID: " + id));
+        templateRenderer.validate(templateData.getHeaderHtml(), templateData.getFooterHtml());
 
         template.setName(templateData.getName());
         template.setDescription(templateData.getDescription());
@@ -118,12 +126,15 @@ public class InvoiceTemplateService {
             template.setIsDefault(true);
         }
 
-        return templateRepository.save(template);
+        InvoiceTemplate saved = templateRepository.save(template);
+        templateRenderer.invalidate(id);
+        return saved;
     }
 
     @Transactional
     public void deleteTemplate(Long id) {
         templateRepository.deleteById(id);
+        templateRenderer.invalidate(id);
     }
 
     @Transactional
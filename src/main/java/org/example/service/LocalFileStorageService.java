@@ -3,17 +3,38 @@ package org.example.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.annotation.PostConstruct;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Local filesystem implementation of FileStorageService.
@@ -34,6 +55,11 @@ public class LocalFileStorageService implements FileStorageService {
     @Value("${app.storage.base-url:/api/files}")
     private String baseUrl;
 
+    private static final String MULTIPART_DIR = ".multipart";
+    private static final String UPLOAD_TARGET_FILE = "target";
+    private static final String UPLOAD_LENGTH_FILE = "length";
+    private static final Pattern PART_FILE_PATTERN = Pattern.compile("part-\\d{5}");
+
     private Path rootLocation;
 
     @PostConstruct
@@ -89,6 +115,40 @@ public class LocalFileStorageService implements FileStorageService {
         }
     }
 
+    @Override
+    public String storeBytes(byte[] content, String storagePath, String contentType) throws FileStorageException {
+        try {
+            Path destinationFile = rootLocation.resolve(storagePath).normalize();
+            if (!destinationFile.startsWith(rootLocation)) {
+                throw new FileStorageException("Cannot store file outside of upload directory");
+            }
+            Files.createDirectories(destinationFile.getParent());
+            Files.write(destinationFile, content);
+
+            logger.info("Stored generated file: {} ({} bytes)", storagePath, content.length);
+            return baseUrl + "/" + storagePath;
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to store file: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String storeStream(InputStream content, long contentLength, String storagePath, String contentType) throws FileStorageException {
+        try {
+            Path destinationFile = rootLocation.resolve(storagePath).normalize();
+            if (!destinationFile.startsWith(rootLocation)) {
+                throw new FileStorageException("Cannot store file outside of upload directory");
+            }
+            Files.createDirectories(destinationFile.getParent());
+            Files.copy(content, destinationFile, StandardCopyOption.REPLACE_EXISTING);
+
+            logger.info("Stored generated file: {} ({} bytes)", storagePath, contentLength);
+            return baseUrl + "/" + storagePath;
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to store file: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public boolean deleteFile(String fileUrl) throws FileStorageException {
         try {
@@ -160,6 +220,71 @@ public class LocalFileStorageService implements FileStorageService {
         }
     }
 
+    @Override
+    public InputStream getFileStream(String fileUrl) throws FileStorageException {
+        try {
+            if (fileUrl == null || fileUrl.isEmpty()) {
+                throw new FileStorageException("File URL cannot be null or empty");
+            }
+
+            String relativePath = fileUrl.replace(baseUrl + "/", "");
+            relativePath = java.net.URLDecoder.decode(relativePath, java.nio.charset.StandardCharsets.UTF_8);
+            Path filePath = rootLocation.resolve(relativePath).normalize();
+
+            // Security check
+            if (!filePath.startsWith(rootLocation)) {
+                throw new FileStorageException("Cannot access file outside of upload directory");
+            }
+
+            if (!Files.exists(filePath)) {
+                throw new FileStorageException("File not found: " + fileUrl);
+            }
+
+            return Files.newInputStream(filePath);
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to read file: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public FileMetadata getFileMetadata(String fileUrl) throws FileStorageException {
+        Path filePath = resolveExistingFile(fileUrl);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            // Changes whenever the file is rewritten, which is all an ETag needs here
+            String eTag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(attributes.size()) + "\"";
+            return new FileMetadata(attributes.size(), getContentType(fileUrl), eTag,
+                    Instant.ofEpochMilli(lastModified));
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to read file: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Optional<Path> getLocalPath(String fileUrl) {
+        return Optional.of(resolveExistingFile(fileUrl));
+    }
+
+    private Path resolveExistingFile(String fileUrl) {
+        if (fileUrl == null || fileUrl.isEmpty()) {
+            throw new FileStorageException("File URL cannot be null or empty");
+        }
+
+        String relativePath = fileUrl.replace(baseUrl + "/", "");
+        relativePath = java.net.URLDecoder.decode(relativePath, java.nio.charset.StandardCharsets.UTF_8);
+        Path filePath = rootLocation.resolve(relativePath).normalize();
+
+        // Security check
+        if (!filePath.startsWith(rootLocation) || filePath.startsWith(multipartRoot())) {
+            throw new FileStorageException("Cannot access file outside of upload directory");
+        }
+        if (!Files.isRegularFile(filePath)) {
+            throw new FileStorageException("File not found: " + fileUrl);
+        }
+        return filePath;
+    }
+
     @Override
     public String getContentType(String fileUrl) {
         if (fileUrl == null) {
@@ -234,12 +359,275 @@ public class LocalFileStorageService implements FileStorageService {
         // We just return it as is
         return fileUrl; 
     }
-}
 
+    // ========== Multipart uploads ==========
+    // Parts are PUT back to this application (FileController) and written to
+    // {upload-dir}/.multipart/{uploadId}/part-NNNNN, then concatenated on completion.
+
+    @Override
+    public MultipartUpload startMultipartUpload(String storagePath, String contentType, long contentLength) {
+        Path destinationFile = rootLocation.resolve(storagePath).normalize();
+        if (!destinationFile.startsWith(rootLocation)) {
+            throw new FileStorageException("Cannot store file outside of upload directory");
+        }
+
+        String uploadId = UUID.randomUUID().toString();
+        try {
+            Path uploadDirectory = Files.createDirectories(multipartRoot().resolve(uploadId));
+            Files.writeString(uploadDirectory.resolve(UPLOAD_LENGTH_FILE), Long.toString(contentLength));
+            Files.writeString(uploadDirectory.resolve(UPLOAD_TARGET_FILE), storagePath);
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to start upload: " + e.getMessage(), e);
+        }
+
+        long partSize = FileStorageService.multipartPartSize(contentLength);
+        int partCount = partCount(contentLength, partSize);
+        logger.info("Started multipart upload {} to {} ({} parts of {} bytes)", uploadId, storagePath, partCount, partSize);
+        return new MultipartUpload(uploadId, storagePath, baseUrl + "/" + storagePath, partSize, partCount);
+    }
+
+    @Override
+    public String generatePresignedPartUrl(String storagePath, String uploadId, int partNumber) {
+        uploadDirectory(storagePath, uploadId);
+        return baseUrl + "/multipart/" + uploadId + "/parts/" + partNumber
+                + "?path=" + URLEncoder.encode(storagePath, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String storeUploadPart(String storagePath, String uploadId, int partNumber,
+                                  InputStream content, long contentLength) {
+        Path uploadDirectory = uploadDirectory(storagePath, uploadId);
+        long declaredLength = declaredLength(uploadDirectory);
+        long partSize = FileStorageService.multipartPartSize(declaredLength);
+        if (partNumber < 1 || partNumber > partCount(declaredLength, partSize)) {
+            throw new FileStorageException("Invalid part number: " + partNumber);
+        }
+        if (contentLength > partSize) {
+            throw new FileStorageException("Part " + partNumber + " is larger than the part size of " + partSize + " bytes");
+        }
+        Path partFile = uploadDirectory.resolve(partFileName(partNumber));
+        try {
+            // Write to a temp file first so a dropped connection never leaves a partial part behind
+            Path tempFile = Files.createTempFile(uploadDirectory, "part-", ".tmp");
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            try (InputStream in = new DigestInputStream(content, md5);
+                 OutputStream out = Files.newOutputStream(tempFile)) {
+                // The part URL needs no login, so never write more than one part's worth, whatever the client claims
+                in.transferTo(new LimitedOutputStream(out, partSize,
+                        "Part " + partNumber + " is larger than the part size of " + partSize + " bytes"));
+            } catch (IOException | FileStorageException e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
+            }
+            if (contentLength >= 0 && Files.size(tempFile) != contentLength) {
+                Files.deleteIfExists(tempFile);
+                throw new FileStorageException("Part " + partNumber + " is incomplete");
+            }
+
+            String eTag = "\"" + HexFormat.of().formatHex(md5.digest()) + "\"";
+            Files.writeString(uploadDirectory.resolve(partFileName(partNumber) + ".etag"), eTag);
+            Files.move(tempFile, partFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return eTag;
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new FileStorageException("Failed to store part " + partNumber + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<UploadedPart> listUploadedParts(String storagePath, String uploadId) {
+        Path uploadDirectory = uploadDirectory(storagePath, uploadId);
+        List<UploadedPart> parts = new ArrayList<>();
+        try (Stream<Path> files = Files.list(uploadDirectory)) {
+            for (Path partFile : files.filter(f -> PART_FILE_PATTERN.matcher(f.getFileName().toString()).matches())
+                    .sorted().toList()) {
+                String name = partFile.getFileName().toString();
+                Path eTagFile = uploadDirectory.resolve(name + ".etag");
+                if (Files.exists(eTagFile)) {
+                    parts.add(new UploadedPart(Integer.parseInt(name.substring(5)), Files.readString(eTagFile)));
+                }
+            }
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to list upload parts: " + e.getMessage(), e);
+        }
+        return parts;
+    }
 
+    @Override
+    public String completeMultipartUpload(String storagePath, String uploadId, List<UploadedPart> parts) {
+        if (parts == null || parts.isEmpty()) {
+            throw new FileStorageException("No parts to assemble");
+        }
+        Path uploadDirectory = uploadDirectory(storagePath, uploadId);
+        Path destinationFile = rootLocation.resolve(storagePath).normalize();
 
+        List<UploadedPart> orderedParts = parts.stream()
+                .sorted(Comparator.comparingInt(UploadedPart::partNumber))
+                .toList();
+        try {
+            long declaredLength = declaredLength(uploadDirectory);
+            int partCount = partCount(declaredLength, FileStorageService.multipartPartSize(declaredLength));
+            for (int i = 0; i < orderedParts.size(); i++) {
+                if (orderedParts.get(i).partNumber() != i + 1) {
+                    throw new IncompleteUploadException("Part " + (i + 1) + " is missing");
+                }
+            }
+            if (orderedParts.size() != partCount) {
+                throw new IncompleteUploadException("Expected " + partCount + " parts but got " + orderedParts.size());
+            }
+            long assembledLength = 0;
+            for (UploadedPart part : orderedParts) {
+                Path eTagFile = uploadDirectory.resolve(partFileName(part.partNumber()) + ".etag");
+                if (!Files.exists(eTagFile) || !Files.readString(eTagFile).equals(part.eTag())) {
+                    throw new IncompleteUploadException("Part " + part.partNumber() + " is missing or does not match its ETag");
+                }
+                assembledLength += Files.size(uploadDirectory.resolve(partFileName(part.partNumber())));
+            }
+            if (assembledLength != declaredLength) {
+                throw new IncompleteUploadException("Uploaded parts total " + assembledLength + " bytes but "
+                        + declaredLength + " were declared");
+            }
 
+            Path assembled = uploadDirectory.resolve("assembled.tmp");
+            try (FileChannel out = FileChannel.open(assembled, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (UploadedPart part : orderedParts) {
+                    try (FileChannel in = FileChannel.open(uploadDirectory.resolve(partFileName(part.partNumber())),
+                            StandardOpenOption.READ)) {
+                        long position = 0;
+                        long size = in.size();
+                        while (position < size) {
+                            position += in.transferTo(position, size - position, out);
+                        }
+                    }
+                }
+            }
 
+            Files.createDirectories(destinationFile.getParent());
+            Files.move(assembled, destinationFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            deleteRecursively(uploadDirectory);
 
+            logger.info("Completed multipart upload {} to {} ({} parts)", uploadId, storagePath, orderedParts.size());
+            return baseUrl + "/" + storagePath;
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to assemble upload: " + e.getMessage(), e);
+        }
+    }
 
+    @Override
+    public void abortMultipartUpload(String storagePath, String uploadId) {
+        try {
+            deleteRecursively(uploadDirectory(storagePath, uploadId));
+            logger.info("Aborted multipart upload {} to {}", uploadId, storagePath);
+        } catch (FileStorageException e) {
+            // Already completed or aborted
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to abort upload: " + e.getMessage(), e);
+        }
+    }
 
+    /**
+     * Runs hourly to remove multipart uploads that were abandoned more than a day ago.
+     */
+    @Scheduled(cron = "0 15 * * * *")
+    public void cleanupAbandonedUploads() {
+        Path multipartRoot = multipartRoot();
+        if (!Files.isDirectory(multipartRoot)) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(Duration.ofHours(24));
+        try (Stream<Path> uploads = Files.list(multipartRoot)) {
+            for (Path upload : uploads.toList()) {
+                if (Files.getLastModifiedTime(upload).toInstant().isBefore(cutoff)) {
+                    deleteRecursively(upload);
+                    logger.info("Removed abandoned multipart upload {}", upload.getFileName());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to clean up abandoned multipart uploads: {}", e.getMessage());
+        }
+    }
+
+    private Path multipartRoot() {
+        return rootLocation.resolve(MULTIPART_DIR);
+    }
+
+    /**
+     * The directory holding an upload's parts, checked against the storage path it was started for.
+     */
+    private Path uploadDirectory(String storagePath, String uploadId) {
+        try {
+            UUID.fromString(uploadId);
+        } catch (IllegalArgumentException e) {
+            throw new FileStorageException("Upload not found: " + uploadId);
+        }
+        Path uploadDirectory = multipartRoot().resolve(uploadId);
+        Path targetFile = uploadDirectory.resolve(UPLOAD_TARGET_FILE);
+        try {
+            if (!Files.exists(targetFile) || !Files.readString(targetFile).equals(storagePath)) {
+                throw new FileStorageException("Upload not found: " + uploadId);
+            }
+        } catch (IOException e) {
+            throw new FileStorageException("Failed to read upload: " + e.getMessage(), e);
+        }
+        return uploadDirectory;
+    }
+
+    // Total size given when the upload was started, which fixes its part size and count
+    private static long declaredLength(Path uploadDirectory) {
+        try {
+            return Long.parseLong(Files.readString(uploadDirectory.resolve(UPLOAD_LENGTH_FILE)).trim());
+        } catch (IOException | NumberFormatException e) {
+            throw new FileStorageException("Upload not found: " + uploadDirectory.getFileName());
+        }
+    }
+
+    private static int partCount(long contentLength, long partSize) {
+        return (int) Math.max(1, (contentLength + partSize - 1) / partSize);
+    }
+
+    private static String partFileName(int partNumber) {
+        return String.format("part-%05d", partNumber);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Fails as soon as more than limit bytes are written, so an oversized part stops being read
+     * instead of filling the disk.
+     */
+    private static final class LimitedOutputStream extends FilterOutputStream {
+        private long remaining;
+        private final String message;
+
+        LimitedOutputStream(OutputStream out, long limit, String message) {
+            super(out);
+            this.remaining = limit;
+            this.message = message;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            reserve(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            reserve(len);
+            out.write(b, off, len);
+        }
+
+        private void reserve(int length) {
+            if (length > remaining) {
+                throw new FileStorageException(message);
+            }
+            remaining -= length;
+        }
+    }
+}
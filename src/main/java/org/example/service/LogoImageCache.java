@@ -0,0 +1,163 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.io.image.ImageDataFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of parsed logo images for PDF rendering.
+ *
+ * Logos are loaded through FileStorageService, from the PDF_LOGO derivative when one exists,
+ * and decoded once. Entries are looked up by logo URL, and the decoded ImageData is shared by
+ * content hash, so organizations whose URLs point at identical bytes reuse one decoded image. HTML templates get the same logo as a
+ * data URI, encoded once per image.
+ * OrganizationController invalidates an organization's URL when its logo is replaced.
+ */
+@Service
+public class LogoImageCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogoImageCache.class);
+
+    private final FileStorageService fileStorageService;
+
+    // logo URL -> SHA-256 of its bytes
+    private final Cache<String, String> hashByUrl = Caffeine.newBuilder()
+            .expireAfterAccess(6, TimeUnit.HOURS)
+            .maximumSize(1000)
+            .build();
+
+    // SHA-256 -> decoded image
+    private final Cache<String, CachedImage> imagesByHash = Caffeine.newBuilder()
+            .expireAfterAccess(6, TimeUnit.HOURS)
+            .maximumSize(200)
+            .build();
+
+    @Autowired
+    public LogoImageCache(FileStorageService fileStorageService) {
+        this.fileStorageService = fileStorageService;
+    }
+
+    /**
+     * Get the decoded logo stored at a FileStorageService URL.
+     *
+     * @return the image, or null if it cannot be loaded
+     */
+    public ImageData getLogo(String logoUrl) {
+        CachedImage image = getLogoImage(logoUrl);
+        return image != null ? image.data() : null;
+    }
+
+    /**
+     * Get the logo stored at a FileStorageService URL as a data URI, for HTML templates.
+     *
+     * @return the data URI, or null if the logo cannot be loaded
+     */
+    public String getLogoDataUri(String logoUrl) {
+        CachedImage image = getLogoImage(logoUrl);
+        return image != null ? image.dataUri() : null;
+    }
+
+    /**
+     * Get a decoded image from the classpath (e.g. the default firm logo).
+     *
+     * @return the image, or null if it cannot be loaded
+     */
+    public ImageData getClasspathImage(String path) {
+        CachedImage image = getClasspathCachedImage(path);
+        return image != null ? image.data() : null;
+    }
+
+    /**
+     * Get an image from the classpath as a data URI, for HTML templates.
+     *
+     * @return the data URI, or null if the image cannot be loaded
+     */
+    public String getClasspathImageDataUri(String path) {
+        CachedImage image = getClasspathCachedImage(path);
+        return image != null ? image.dataUri() : null;
+    }
+
+    /**
+     * Forget a logo URL, e.g. after the organization logo is replaced or deleted.
+     */
+    public void invalidate(String logoUrl) {
+        if (logoUrl != null) {
+            hashByUrl.invalidate(logoUrl);
+        }
+    }
+
+    private CachedImage getLogoImage(String logoUrl) {
+        if (logoUrl == null || logoUrl.trim().isEmpty()) {
+            return null;
+        }
+        return get(logoUrl, () -> {
+            // The PDF-sized derivative, if it has been generated
+            String pdfLogoUrl = ImageDerivativeService.derivativeUrl(logoUrl, ImageDerivativeService.Variant.PDF_LOGO);
+            if (pdfLogoUrl != null && fileStorageService.fileExists(pdfLogoUrl)) {
+                return fileStorageService.getFileBytes(pdfLogoUrl);
+            }
+            return fileStorageService.getFileBytes(logoUrl);
+        });
+    }
+
+    private CachedImage getClasspathCachedImage(String path) {
+        return get("classpath:" + path, () -> {
+            try (InputStream in = new ClassPathResource(path).getInputStream()) {
+                return in.readAllBytes();
+            }
+        });
+    }
+
+    private CachedImage get(String key, ImageLoader loader) {
+        String hash = hashByUrl.getIfPresent(key);
+        if (hash != null) {
+            CachedImage image = imagesByHash.getIfPresent(hash);
+            if (image != null) {
+                return image;
+            }
+        }
+
+        try {
+            byte[] bytes = loader.load();
+            String contentHash = sha256(bytes);
+            CachedImage image = imagesByHash.get(contentHash, h -> decode(bytes));
+            hashByUrl.put(key, contentHash);
+            return image;
+        } catch (Exception e) {
+            logger.warn("Could not load logo image {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private static CachedImage decode(byte[] bytes) {
+        ImageData data = ImageDataFactory.create(bytes);
+        String mimeType = "image/" + data.getOriginalType().name().toLowerCase();
+        return new CachedImage(data, "data:" + mimeType + ";base64," + Base64.getEncoder().encodeToString(bytes));
+    }
+
+    private static String sha256(byte[] bytes) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    private record CachedImage(ImageData data, String dataUri) {
+    }
+
+    @FunctionalInterface
+    private interface ImageLoader {
+        byte[] load() throws IOException;
+    }
+}
@@ -0,0 +1,159 @@
+package org.example.service;
+
+import org.example.models.Notification;
+import org.example.models.Task;
+import org.example.models.User;
+import org.example.models.enums.NotificationType;
+import org.example.repository.NotificationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Per-user notification store with a daily digest.
+ *
+ * Non-urgent events (such as task assignments) are recorded here instead of being emailed one
+ * by one. The digest job walks users with pending events in batches, loads each batch's events
+ * with a single query, and queues one digest email per user in the email outbox, in the same
+ * transaction that marks the events as digested. Mail volume therefore grows with the number
+ * of users, not the number of events.
+ *
+ * Security emails (verification, invitations, password resets) and invoices are still sent
+ * immediately.
+ */
+@Service
+public class NotificationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationService.class);
+
+    private final NotificationRepository notificationRepository;
+    private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.notifications.digest-batch-size:200}")
+    private int digestBatchSize;
+
+    @Value("${app.notifications.retention-days:30}")
+    private int retentionDays;
+
+    @Autowired
+    public NotificationService(NotificationRepository notificationRepository,
+                               EmailService emailService,
+                               PlatformTransactionManager transactionManager) {
+        this.notificationRepository = notificationRepository;
+        this.emailService = emailService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Record an event for the user's next digest. Joins the caller's transaction if there is one.
+     */
+    @Transactional
+    public Notification record(User user, NotificationType type, String message, String link) {
+        return notificationRepository.save(new Notification(user, type, message, link));
+    }
+
+    /**
+     * Record a task assignment for the new assignee, unless they assigned the task to themselves
+     * or the assignee did not change.
+     */
+    @Transactional
+    public void notifyTaskAssigned(Task task, Long previousAssigneeId, User actor) {
+        User assignee = task.getAssignee();
+        if (assignee == null || Objects.equals(assignee.getId(), previousAssigneeId)) {
+            return;
+        }
+        if (actor != null && Objects.equals(actor.getId(), assignee.getId())) {
+            return;
+        }
+
+        String assignedBy = actor != null ? actor.getName() : "Someone";
+        String message = assignedBy + " assigned you " + task.getTaskNumber() + ": " + task.getName();
+        if (message.length() > 500) {
+            message = message.substring(0, 497) + "...";
+        }
+        record(assignee, NotificationType.TASK_ASSIGNED, message, "/tasks/" + task.getId() + "/details");
+    }
+
+    /**
+     * Queue one digest email per user with pending notifications.
+     * Runs daily at 08:00 by default.
+     */
+    @Scheduled(cron = "${app.notifications.digest-cron:0 0 8 * * *}")
+    public void sendDigests() {
+        long startTime = System.currentTimeMillis();
+        int users = 0;
+        Long afterUserId = 0L;
+
+        try {
+            while (true) {
+                List<Long> userIds = notificationRepository.findPendingUserIds(
+                        afterUserId, PageRequest.of(0, digestBatchSize));
+                if (userIds.isEmpty()) {
+                    break;
+                }
+                transactionTemplate.executeWithoutResult(status -> sendDigestBatch(userIds));
+                users += userIds.size();
+                afterUserId = userIds.get(userIds.size() - 1);
+            }
+        } catch (Exception e) {
+            logger.error("Notification digest failed after {} users: {}", users, e.getMessage(), e);
+        }
+
+        if (users > 0) {
+            logger.info("Queued notification digests for {} users in {} ms",
+                    users, System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * Remove notifications that were digested more than the retention period ago.
+     * Runs daily at 04:00.
+     */
+    @Scheduled(cron = "0 0 4 * * *")
+    @Transactional
+    public void purgeDigestedNotifications() {
+        int deleted = notificationRepository.deleteDigestedBefore(LocalDateTime.now().minusDays(retentionDays));
+        if (deleted > 0) {
+            logger.info("Purged {} digested notifications", deleted);
+        }
+    }
+
+    private void sendDigestBatch(List<Long> userIds) {
+        List<Notification> pending = notificationRepository.findPendingForUsers(userIds);
+
+        Map<User, List<Notification>> byUser = new LinkedHashMap<>();
+        List<Long> notificationIds = new ArrayList<>(pending.size());
+        for (Notification notification : pending) {
+            byUser.computeIfAbsent(notification.getUser(), user -> new ArrayList<>()).add(notification);
+            notificationIds.add(notification.getId());
+        }
+
+        for (Map.Entry<User, List<Notification>> entry : byUser.entrySet()) {
+            User user = entry.getKey();
+            if (user.getEmail() == null || user.getEmail().isBlank() || !user.isEnabled()) {
+                // Nobody to send to; the events are still marked as digested below
+                continue;
+            }
+            emailService.sendDigestEmail(user.getEmail(), user.getName(), entry.getValue());
+        }
+
+        if (!notificationIds.isEmpty()) {
+            notificationRepository.markDigested(notificationIds, LocalDateTime.now());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.example.service;
+
+import org.example.models.Organization;
+import org.example.models.Payslip;
+import org.example.repository.OrganizationRepository;
+import org.example.repository.PayslipRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exports all payslips of a pay period as one ZIP, one PDF per payslip.
+ *
+ * PDFs are rendered in parallel on the PDF pool, but only app.payslip-export.render-window of
+ * them are in flight at once, and each is written to the ZIP as soon as it finishes and then
+ * dropped. Memory therefore depends on the window, not on the number of employees, and the
+ * window is kept below the pool size so an export leaves threads free for interactive downloads.
+ * If the pool is saturated by other requests, the remaining payslips are rendered on the
+ * streaming thread instead of failing the export.
+ */
+@Service
+public class PayslipExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayslipExportService.class);
+
+    private final PayslipRepository payslipRepository;
+    private final OrganizationRepository organizationRepository;
+    private final PdfCacheService pdfCacheService;
+    private final ThreadPoolTaskExecutor pdfRenderExecutor;
+    private final int renderWindow;
+
+    @Autowired
+    public PayslipExportService(PayslipRepository payslipRepository,
+                                OrganizationRepository organizationRepository,
+                                PdfCacheService pdfCacheService,
+                                @Qualifier("pdfRenderExecutor") ThreadPoolTaskExecutor pdfRenderExecutor,
+                                @Value("${app.payslip-export.render-window:2}") int renderWindow) {
+        this.payslipRepository = payslipRepository;
+        this.organizationRepository = organizationRepository;
+        this.pdfCacheService = pdfCacheService;
+        this.pdfRenderExecutor = pdfRenderExecutor;
+        // At least one pool thread always stays free for other requests
+        this.renderWindow = Math.max(1, Math.min(renderWindow, pdfRenderExecutor.getMaxPoolSize() - 1));
+    }
+
+    /**
+     * Find the payslips of a pay period, with the employee and organization loaded for rendering.
+     */
+    @Transactional(readOnly = true)
+    public List<Payslip> getPayslipsForPeriod(Long organizationId, int year, int month) {
+        Organization organization = organizationRepository.findById(organizationId)
+                .orElseThrow(() -> new IllegalArgumentException("Organization not found"));
+        return payslipRepository.findByOrganizationAndYearAndMonth(organization, year, month);
+    }
+
+    /**
+     * Write a ZIP of the payslips' PDFs to the stream, in the order they finish rendering.
+     * A payslip that fails to render is skipped and listed in FAILED.txt at the end of the ZIP.
+     * The stream is finished but not closed.
+     */
+    public void writeZip(List<Payslip> payslips, OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        CompletionService<RenderedPayslip> completion = new ExecutorCompletionService<>(pdfRenderExecutor);
+        List<Future<RenderedPayslip>> inFlight = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // PDFs are already compressed, so entries are stored as-is
+        zip.setMethod(ZipOutputStream.STORED);
+        try {
+            int next = 0;
+            int pending = 0;
+            while (next < payslips.size() || pending > 0) {
+                while (pending < renderWindow && next < payslips.size()) {
+                    Payslip payslip = payslips.get(next++);
+                    try {
+                        inFlight.add(completion.submit(() -> render(payslip)));
+                        pending++;
+                    } catch (TaskRejectedException e) {
+                        writeEntry(zip, render(payslip), failures);
+                    }
+                }
+                if (pending == 0) {
+                    continue;
+                }
+
+                Future<RenderedPayslip> done = completion.take();
+                inFlight.remove(done);
+                pending--;
+                writeEntry(zip, done.get(), failures);
+            }
+
+            if (!failures.isEmpty()) {
+                byte[] report = String.join("\n", failures).getBytes(StandardCharsets.UTF_8);
+                putStored(zip, "FAILED.txt", report);
+            }
+            zip.finish();
+            zip.flush();
+
+            logger.info("Exported {} payslips ({} failed) in {} ms",
+                    payslips.size() - failures.size(), failures.size(), System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while exporting payslips", e);
+        } catch (ExecutionException e) {
+            // render() handles its own failures, so this is unexpected
+            throw new IOException("Failed to export payslips", e.getCause());
+        } finally {
+            // The client may have disconnected; do not keep rendering for nobody
+            for (Future<RenderedPayslip> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private RenderedPayslip render(Payslip payslip) {
+        String entryName = "payslip_" + payslip.getPayslipNumber() + ".pdf";
+        try {
+            return new RenderedPayslip(entryName, pdfCacheService.getPayslipPdf(payslip), null);
+        } catch (Exception e) {
+            logger.warn("Failed to render payslip {} for export: {}", payslip.getPayslipNumber(), e.getMessage());
+            return new RenderedPayslip(entryName, null, e.getMessage());
+        }
+    }
+
+    private void writeEntry(ZipOutputStream zip, RenderedPayslip rendered, List<String> failures) throws IOException {
+        if (rendered.pdf() == null) {
+            failures.add(rendered.entryName() + ": " + rendered.error());
+            return;
+        }
+        putStored(zip, rendered.entryName(), rendered.pdf());
+        zip.flush();
+    }
+
+    private void putStored(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        ZipEntry entry = new ZipEntry(name);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private record RenderedPayslip(String entryName, byte[] pdf, String error) {
+    }
+}
@@ -2,13 +2,16 @@ package org.example.service;
 
 import org.example.models.*;
 import org.example.models.enums.PayslipStatus;
+import org.example.repository.PayslipBatchRepository;
 import org.example.repository.PayslipRepository;
+import org.example.repository.TimeLogRepository;
 
 import org.example.repository.UserRepository;
 import org.example.repository.OrganizationRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -17,6 +20,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -30,6 +34,8 @@ public class PayslipService {
     @Autowired
     private PayslipRepository payslipRepository;
 
+    @Autowired
+    private PayslipBatchRepository payslipBatchRepository;
 
 
     @Autowired
@@ -38,6 +44,20 @@ public class PayslipService {
     @Autowired
     private OrganizationRepository organizationRepository;
 
+    @Autowired
+    private TimeLogRepository timeLogRepository;
+
+    @Autowired
+    private WorkingDayCalendarService workingDayCalendarService;
+
+    // Hours per weekday beyond which logged time counts as overtime
+    @Value("${app.payroll.daily-hours-threshold:8}")
+    private BigDecimal dailyHoursThreshold;
+
+    // When false, every working day in the period counts as worked and there is no overtime
+    @Value("${app.payroll.attendance-from-time-logs:true}")
+    private boolean attendanceFromTimeLogs;
+
     /**
      * Generate payslip data without saving to database (for on-the-fly PDF generation)
      */
@@ -68,7 +88,7 @@ public class PayslipService {
             }
 
             // Calculate total working days in the pay period (excluding weekends)
-            long totalWorkingDaysInPeriod = calculateWorkingDaysInPeriod(payPeriodStart, payPeriodEnd);
+            long totalWorkingDaysInPeriod = calculateWorkingDaysInPeriod(organizationId, payPeriodStart, payPeriodEnd);
             
             // Calculate daily salary based on working days only (excluding weekends)
             // This gives the daily rate for working days in this specific period
@@ -161,6 +181,7 @@ public class PayslipService {
             payslip.setBasicSalary(basicSalary);
             payslip.setDailySalary(dailySalary);
             payslip.setDaysWorked((int) workingDays);
+            payslip.setWorkingDaysInPeriod((int) totalWorkingDaysInPeriod);
             payslip.setOvertimeHours(overtimeHours);
             payslip.setOvertimeRate(overtimeRate);
             payslip.setOvertimeAmount(overtimePay);
@@ -182,6 +203,8 @@ public class PayslipService {
 
             return payslip;
 
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error generating payslip data: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to generate payslip data: " + e.getMessage());
@@ -230,6 +253,7 @@ public class PayslipService {
             Payslip payslip = new Payslip(user, organization, payPeriodStart, payPeriodEnd);
             payslip.setDailySalary(dailySalary);
             payslip.setDaysWorked(calculation.getDaysWorked());
+            payslip.setWorkingDaysInPeriod((int) calculateWorkingDaysInPeriod(organizationId, payPeriodStart, payPeriodEnd));
             payslip.setOvertimeHours(calculation.getOvertimeHours());
             payslip.setOvertimeRate(user.getOvertimeRate() != null ? user.getOvertimeRate() : BigDecimal.ZERO);
             
@@ -278,6 +302,8 @@ public class PayslipService {
 
             return savedPayslip;
 
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error generating payslip for user {}: {}", userId, e.getMessage(), e);
             throw new RuntimeException("Failed to generate payslip: " + e.getMessage());
@@ -285,18 +311,188 @@ public class PayslipService {
     }
 
     /**
-     * Calculate salary based on working days in period
-     * Note: Attendance tracking has been disabled. Returns working days in period as days worked.
+     * Generate payslips for every enabled user of an organization in one pass.
+     *
+     * Users, existing payslips and hours logged per (user, date) are loaded with one query each,
+     * salaries are computed in parallel from each user's monthly (or daily) salary, and the payslips are
+     * inserted in JDBC batches. Users who already have a payslip overlapping the period, who
+     * have no salary configured, or (with attendance from time logs) who logged no time in the
+     * period, are skipped and listed in the report.
+     * Salaries follow the same rules as generatePayslipData, so a run matches the preview.
+     */
+    public PayrollRunReport runPayroll(Long organizationId, Long createdById, LocalDate payPeriodStart,
+                                       LocalDate payPeriodEnd, String notes) {
+        if (payPeriodEnd.isBefore(payPeriodStart)) {
+            throw new IllegalArgumentException("Pay period end must not be before its start");
+        }
+        long start = System.currentTimeMillis();
+
+        Organization organization = organizationRepository.findById(organizationId)
+            .orElseThrow(() -> new IllegalArgumentException("Organization not found"));
+        User createdBy = createdById != null ? userRepository.findById(createdById).orElse(null) : null;
+
+        List<User> users = userRepository.findByOrganization_IdAndEnabled(organizationId, true);
+        Set<Long> alreadyPaid = new HashSet<>(
+            payslipRepository.findUserIdsWithPayPeriodOverlap(organizationId, payPeriodStart, payPeriodEnd));
+
+        PayrollRunReport report = new PayrollRunReport(payPeriodStart, payPeriodEnd, users.size());
+        List<User> eligible = new ArrayList<>();
+        for (User user : users) {
+            if (alreadyPaid.contains(user.getId())) {
+                report.skip(user, "Payslip already exists for this period");
+            } else if (!hasSalary(user)) {
+                report.skip(user, "No monthly or daily salary configured");
+            } else {
+                eligible.add(user);
+            }
+        }
+
+        // The same for everyone, so computed once rather than per user
+        long workingDaysInPeriod = calculateWorkingDaysInPeriod(organizationId, payPeriodStart, payPeriodEnd);
+        Map<Long, PayslipCalculationResult> attendance =
+            calculateAttendanceForOrganization(organizationId, payPeriodStart, payPeriodEnd);
+        PayslipCalculationResult fullAttendance = new PayslipCalculationResult((int) workingDaysInPeriod, BigDecimal.ZERO);
+        if (attendanceFromTimeLogs) {
+            // No time logs means nothing to pay from; list them rather than issue zero-pay payslips
+            eligible.removeIf(user -> {
+                if (attendance.containsKey(user.getId())) {
+                    return false;
+                }
+                report.skip(user, "No time logged in this period");
+                return true;
+            });
+        }
+
+        List<Payslip> payslips = eligible.parallelStream()
+            .map(user -> buildRunPayslip(user, organization, createdBy, payPeriodStart, payPeriodEnd,
+                                         workingDaysInPeriod, attendance.getOrDefault(user.getId(), fullAttendance), notes))
+            .collect(Collectors.toList());
+
+        payslipBatchRepository.batchInsert(payslips);
+        payslips.forEach(report::created);
+        report.durationMs = System.currentTimeMillis() - start;
+
+        logger.info("Payroll run for organization {} ({} to {}): {} created, {} skipped in {} ms",
+            organizationId, payPeriodStart, payPeriodEnd, report.getCreatedCount(),
+            report.getSkipped().size(), report.durationMs);
+        return report;
+    }
+
+    private boolean hasSalary(User user) {
+        return (user.getMonthlySalary() != null && user.getMonthlySalary().compareTo(BigDecimal.ZERO) > 0)
+            || (user.getDailySalary() != null && user.getDailySalary().compareTo(BigDecimal.ZERO) > 0);
+    }
+
+    private Payslip buildRunPayslip(User user, Organization organization, User createdBy,
+                                    LocalDate payPeriodStart, LocalDate payPeriodEnd,
+                                    long workingDaysInPeriod, PayslipCalculationResult attendance, String notes) {
+        // Daily rate over working days only, as in generatePayslipData; fall back to the user's daily salary
+        BigDecimal dailySalary;
+        if (user.getMonthlySalary() != null && user.getMonthlySalary().compareTo(BigDecimal.ZERO) > 0) {
+            dailySalary = workingDaysInPeriod > 0 ?
+                user.getMonthlySalary().divide(BigDecimal.valueOf(workingDaysInPeriod), 2, BigDecimal.ROUND_HALF_UP) :
+                BigDecimal.ZERO;
+        } else {
+            dailySalary = user.getDailySalary();
+        }
+
+        Payslip payslip = new Payslip(user, organization, payPeriodStart, payPeriodEnd);
+        payslip.setCreatedBy(createdBy);
+        payslip.setDailySalary(dailySalary);
+        payslip.setDaysWorked(attendance.getDaysWorked());
+        payslip.setWorkingDaysInPeriod((int) workingDaysInPeriod);
+        payslip.setOvertimeHours(attendance.getOvertimeHours());
+        payslip.setOvertimeRate(user.getOvertimeRate() != null ? user.getOvertimeRate() : BigDecimal.ZERO);
+        payslip.setInsuranceDeduction(user.getInsuranceDeduction() != null ? user.getInsuranceDeduction() : BigDecimal.ZERO);
+        payslip.setNotes(notes);
+        payslip.calculateAmounts();
+
+        // Tax is a percentage of gross salary
+        BigDecimal taxRate = user.getTaxRate() != null ? user.getTaxRate() : BigDecimal.ZERO;
+        payslip.setTaxDeduction(payslip.getGrossSalary().multiply(taxRate)
+            .divide(BigDecimal.valueOf(100), 2, BigDecimal.ROUND_HALF_UP));
+        payslip.calculateAmounts();
+
+        payslip.setStatus(PayslipStatus.GENERATED);
+        // One payslip per user per period start, so this is unique
+        payslip.setPayslipNumber("PS" + payPeriodStart.format(DateTimeFormatter.BASIC_ISO_DATE)
+            + String.format("%04d", user.getId()));
+        return payslip;
+    }
+
+    /**
+     * Calculate days worked and overtime for one user from their time logs.
+     * With app.payroll.attendance-from-time-logs=false, returns working days in period as days worked.
+     * Throws IllegalArgumentException when the user logged no time in the period.
      */
     private PayslipCalculationResult calculateSalaryFromAttendance(User user, LocalDate startDate, LocalDate endDate) {
-        // Attendance tracking disabled - calculate working days in period instead
-        int workingDays = (int) calculateWorkingDaysInPeriod(startDate, endDate);
-        BigDecimal totalOvertimeHours = BigDecimal.ZERO;
-        
-        logger.info("Calculating payslip for user {} - using {} working days in period (attendance tracking disabled)", 
-            user.getUsername(), workingDays);
+        if (!attendanceFromTimeLogs) {
+            int workingDays = (int) calculateWorkingDaysInPeriod(user.getOrganization().getId(), startDate, endDate);
+            logger.info("Calculating payslip for user {} - using {} working days in period (attendance from time logs disabled)",
+                user.getUsername(), workingDays);
+            return new PayslipCalculationResult(workingDays, BigDecimal.ZERO);
+        }
 
-        return new PayslipCalculationResult(workingDays, totalOvertimeHours);
+        PayslipCalculationResult result = summarizeAttendance(user.getOrganization().getId(),
+            timeLogRepository.sumHoursByDateForUser(user.getId(), startDate, endDate))
+            .get(user.getId());
+        if (result == null) {
+            // Most likely time is not being logged at all; a zero-pay payslip would hide that
+            throw new IllegalArgumentException("No time logged by " + user.getUsername() + " in this pay period");
+        }
+        logger.info("Calculating payslip for user {} - {} days worked, {} overtime hours from time logs",
+            user.getUsername(), result.getDaysWorked(), result.getOvertimeHours());
+        return result;
+    }
+
+    /**
+     * Calculate days worked and overtime for all users of an organization with one grouped
+     * query over time_logs. Users without logs in the period are absent from the map.
+     */
+    private Map<Long, PayslipCalculationResult> calculateAttendanceForOrganization(Long organizationId,
+                                                                              LocalDate startDate, LocalDate endDate) {
+        if (!attendanceFromTimeLogs) {
+            return Collections.emptyMap();
+        }
+        return summarizeAttendance(organizationId, timeLogRepository.sumHoursByUserAndDate(organizationId, startDate, endDate));
+    }
+
+    /**
+     * Fold [userId, date, hours] rows into per-user totals.
+     */
+    private Map<Long, PayslipCalculationResult> summarizeAttendance(Long organizationId, List<Object[]> dailyHours) {
+        Map<Long, int[]> daysWorked = new HashMap<>();
+        Map<Long, BigDecimal> overtimeHours = new HashMap<>();
+        for (Object[] row : dailyHours) {
+            Long userId = (Long) row[0];
+            WorkDayCalculation day = calculateWorkDay(organizationId, (LocalDate) row[1], (BigDecimal) row[2]);
+            if (day.isWorked()) {
+                daysWorked.computeIfAbsent(userId, id -> new int[1])[0]++;
+            }
+            overtimeHours.merge(userId, day.getOvertimeHours(), BigDecimal::add);
+        }
+
+        Map<Long, PayslipCalculationResult> results = new HashMap<>();
+        for (Map.Entry<Long, BigDecimal> entry : overtimeHours.entrySet()) {
+            int[] days = daysWorked.get(entry.getKey());
+            results.put(entry.getKey(), new PayslipCalculationResult(days != null ? days[0] : 0, entry.getValue()));
+        }
+        return results;
+    }
+
+    /**
+     * A working day with logged hours counts as a day worked, and hours beyond the daily threshold
+     * are overtime. Weekends and holidays are not paid days, so all hours logged on them are overtime.
+     */
+    private WorkDayCalculation calculateWorkDay(Long organizationId, LocalDate date, BigDecimal hours) {
+        if (hours == null || hours.compareTo(BigDecimal.ZERO) <= 0) {
+            return new WorkDayCalculation(false, BigDecimal.ZERO, BigDecimal.ZERO);
+        }
+        if (!workingDayCalendarService.isWorkingDay(organizationId, date)) {
+            return new WorkDayCalculation(false, hours, hours);
+        }
+        BigDecimal overtime = hours.subtract(dailyHoursThreshold).max(BigDecimal.ZERO);
+        return new WorkDayCalculation(true, hours, overtime);
     }
 
 
@@ -413,22 +609,60 @@ public class PayslipService {
     }
 
     /**
-     * Calculate working days in a period (excluding weekends)
+     * Calculate working days in a period (excluding weekends and organization holidays)
      */
-    private long calculateWorkingDaysInPeriod(LocalDate startDate, LocalDate endDate) {
-        long workingDays = 0;
-        LocalDate currentDate = startDate;
-        
-        while (!currentDate.isAfter(endDate)) {
-            // Check if it's a weekday (Monday = 1, Sunday = 7)
-            int dayOfWeek = currentDate.getDayOfWeek().getValue();
-            if (dayOfWeek >= 1 && dayOfWeek <= 5) { // Monday to Friday
-                workingDays++;
-            }
-            currentDate = currentDate.plusDays(1);
+    private long calculateWorkingDaysInPeriod(Long organizationId, LocalDate startDate, LocalDate endDate) {
+        return workingDayCalendarService.countWorkingDays(organizationId, startDate, endDate);
+    }
+
+    /**
+     * Outcome of a payroll run.
+     */
+    public static class PayrollRunReport {
+        private final LocalDate payPeriodStart;
+        private final LocalDate payPeriodEnd;
+        private final int totalEmployees;
+        private final List<Map<String, Object>> created = new ArrayList<>();
+        private final List<Map<String, Object>> skipped = new ArrayList<>();
+        private BigDecimal totalGrossSalary = BigDecimal.ZERO;
+        private BigDecimal totalNetSalary = BigDecimal.ZERO;
+        private long durationMs;
+
+        PayrollRunReport(LocalDate payPeriodStart, LocalDate payPeriodEnd, int totalEmployees) {
+            this.payPeriodStart = payPeriodStart;
+            this.payPeriodEnd = payPeriodEnd;
+            this.totalEmployees = totalEmployees;
         }
-        
-        return workingDays;
+
+        void created(Payslip payslip) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("userId", payslip.getUserId());
+            entry.put("userName", payslip.getUserName());
+            entry.put("payslipNumber", payslip.getPayslipNumber());
+            entry.put("grossSalary", payslip.getGrossSalary());
+            entry.put("netSalary", payslip.getNetSalary());
+            created.add(entry);
+            totalGrossSalary = totalGrossSalary.add(payslip.getGrossSalary());
+            totalNetSalary = totalNetSalary.add(payslip.getNetSalary());
+        }
+
+        void skip(User user, String reason) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("userId", user.getId());
+            entry.put("userName", user.getName());
+            entry.put("reason", reason);
+            skipped.add(entry);
+        }
+
+        public LocalDate getPayPeriodStart() { return payPeriodStart; }
+        public LocalDate getPayPeriodEnd() { return payPeriodEnd; }
+        public int getTotalEmployees() { return totalEmployees; }
+        public int getCreatedCount() { return created.size(); }
+        public List<Map<String, Object>> getCreated() { return created; }
+        public List<Map<String, Object>> getSkipped() { return skipped; }
+        public BigDecimal getTotalGrossSalary() { return totalGrossSalary; }
+        public BigDecimal getTotalNetSalary() { return totalNetSalary; }
+        public long getDurationMs() { return durationMs; }
     }
 
     // Helper classes
@@ -0,0 +1,342 @@
+package org.example.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.example.models.Invoice;
+import org.example.models.InvoiceItem;
+import org.example.models.Organization;
+import org.example.models.Payslip;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.Callable;
+
+/**
+ * Content-addressed store of rendered invoice and payslip PDFs.
+ *
+ * Each PDF is stored under a SHA-256 of everything the renderer reads: the document fields,
+ * its line items, the organization header and bank fields, the PDF layout version and, for
+ * invoices, the HTML template version.
+ * Any change to that data produces a new key, so stored PDFs never need invalidation;
+ * superseded files can be expired with a lifecycle rule on the rendered/ prefix.
+ */
+@Service
+public class PdfCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfCacheService.class);
+
+    private static final String PDF_CONTENT_TYPE = "application/pdf";
+
+    private final PdfService pdfService;
+    private final PdfRenderingService pdfRenderingService;
+    private final FileStorageService fileStorageService;
+
+    @Autowired
+    public PdfCacheService(PdfService pdfService, PdfRenderingService pdfRenderingService,
+                           FileStorageService fileStorageService) {
+        this.pdfService = pdfService;
+        this.pdfRenderingService = pdfRenderingService;
+        this.fileStorageService = fileStorageService;
+    }
+
+    /**
+     * Get the invoice PDF, rendering and storing it only if this exact content has not been rendered before.
+     */
+    public byte[] getInvoicePdf(Invoice invoice) {
+        String storagePath = invoicePdfPath(invoice);
+        byte[] cached = readStored(storagePath);
+        if (cached != null) {
+            return cached;
+        }
+
+        byte[] pdfBytes = pdfRenderingService.render("invoice", () -> pdfService.generateInvoicePdf(invoice));
+        store(storagePath, pdfBytes);
+        return pdfBytes;
+    }
+
+    /**
+     * Prepare the invoice PDF for streaming. If it has not been rendered before, it is rendered
+     * now on the PDF pool into a temporary file, so a full pool is reported before any
+     * response is committed; writeTo then only copies bytes. Stream it with toResponseBody so the
+     * temporary file is removed even if it is never written.
+     */
+    public RenderedPdf prepareInvoicePdf(Invoice invoice) {
+        String storagePath = invoicePdfPath(invoice);
+        if (fileStorageService.fileExists(storagePath)) {
+            return out -> copyStored(storagePath, out);
+        }
+        Path tempFile = pdfRenderingService.render("invoice",
+                () -> renderToTempFile(target -> pdfService.generateInvoicePdf(invoice, target)),
+                PdfCacheService::deleteTempFile);
+        return tempFilePdf(tempFile, storagePath);
+    }
+
+    /**
+     * Prepare the payslip PDF for streaming. Unsaved payslips are rendered without storing.
+     */
+    public RenderedPdf preparePayslipPdf(Payslip payslip) {
+        // Unsaved payslips (previews) get a new creation time on every request, so storing them is pointless
+        String storagePath = payslip.getId() != null
+                ? FileStoragePathBuilder.buildRenderedPdfPath(payslip.getOrganization().getId(), "payslips", payslipHash(payslip))
+                : null;
+        if (storagePath != null && fileStorageService.fileExists(storagePath)) {
+            return out -> copyStored(storagePath, out);
+        }
+        Path tempFile = pdfRenderingService.render("payslip",
+                () -> renderToTempFile(target -> pdfService.generatePayslipPdf(payslip, target)),
+                PdfCacheService::deleteTempFile);
+        return tempFilePdf(tempFile, storagePath);
+    }
+
+    /**
+     * Get a saved payslip's PDF from storage, or render and store it on the calling thread.
+     * Used by pay period exports, whose tasks already run on the PDF pool.
+     */
+    public byte[] getPayslipPdf(Payslip payslip) {
+        String storagePath = FileStoragePathBuilder.buildRenderedPdfPath(
+                payslip.getOrganization().getId(), "payslips", payslipHash(payslip));
+        byte[] cached = readStored(storagePath);
+        if (cached != null) {
+            return cached;
+        }
+
+        byte[] pdfBytes = pdfService.generatePayslipPdf(payslip);
+        store(storagePath, pdfBytes);
+        return pdfBytes;
+    }
+
+    /**
+     * Render and store the invoice PDF on the calling thread, returning its storage URL.
+     * Used by billing runs, which have their own rendering pool.
+     */
+    public String storeInvoicePdf(Invoice invoice) {
+        String storagePath = invoicePdfPath(invoice);
+        byte[] pdfBytes = pdfService.generateInvoicePdf(invoice);
+        return fileStorageService.storeBytes(pdfBytes, storagePath, PDF_CONTENT_TYPE);
+    }
+
+    private String invoicePdfPath(Invoice invoice) {
+        return FileStoragePathBuilder.buildRenderedPdfPath(
+                invoice.getOrganization().getId(), "invoices", invoiceHash(invoice));
+    }
+
+    private Path renderToTempFile(PdfRenderer renderer) throws IOException {
+        Path tempFile = Files.createTempFile("rendered-", ".pdf");
+        try (OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+            renderer.render(fileOut);
+            return tempFile;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    private RenderedPdf tempFilePdf(Path tempFile, String storagePath) {
+        return new RenderedPdf() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                copyAndStore(tempFile, storagePath, out);
+            }
+
+            @Override
+            public void discard() {
+                deleteTempFile(tempFile);
+            }
+        };
+    }
+
+    private static void deleteTempFile(Path tempFile) {
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            logger.warn("Failed to delete rendered PDF {}: {}", tempFile, e.getMessage());
+        }
+    }
+
+    private void copyStored(String storagePath, OutputStream out) throws IOException {
+        try (InputStream stored = fileStorageService.getFileStream(storagePath)) {
+            stored.transferTo(out);
+        }
+    }
+
+    /**
+     * Copy a freshly rendered PDF to the stream, then keep it in storage (if a path is given).
+     * Only a copy buffer is held in memory.
+     */
+    private void copyAndStore(Path tempFile, String storagePath, OutputStream out) throws IOException {
+        try {
+            try (InputStream in = Files.newInputStream(tempFile)) {
+                in.transferTo(out);
+            }
+            out.flush();
+
+            if (storagePath != null) {
+                try (InputStream in = Files.newInputStream(tempFile)) {
+                    fileStorageService.storeStream(in, Files.size(tempFile), storagePath, PDF_CONTENT_TYPE);
+                } catch (Exception e) {
+                    logger.warn("Failed to store rendered PDF {}: {}", storagePath, e.getMessage());
+                }
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private byte[] readStored(String storagePath) {
+        try {
+            return fileStorageService.getFileBytes(storagePath);
+        } catch (FileStorageService.FileStorageException e) {
+            return null; // Not rendered yet
+        }
+    }
+
+    private void store(String storagePath, byte[] pdfBytes) {
+        try {
+            fileStorageService.storeBytes(pdfBytes, storagePath, PDF_CONTENT_TYPE);
+        } catch (Exception e) {
+            // The freshly rendered PDF is still returned; it will simply be rendered again next time
+            logger.warn("Failed to store rendered PDF {}: {}", storagePath, e.getMessage());
+        }
+    }
+
+    private String invoiceHash(Invoice invoice) {
+        Fingerprint fp = new Fingerprint();
+        fp.add(PdfService.LAYOUT_VERSION).add(pdfService.getInvoiceLayoutKey(invoice));
+        fp.add(invoice.getInvoiceNumber()).add(invoice.getStatus())
+          .add(invoice.getIssueDate()).add(invoice.getDueDate())
+          .add(invoice.getClientName()).add(invoice.getClientEmail())
+          .add(invoice.getClientAddress()).add(invoice.getClientPhone())
+          .add(invoice.getSubtotal()).add(invoice.getTaxRate()).add(invoice.getTaxAmount())
+          .add(invoice.getCgstRate()).add(invoice.getCgstAmount())
+          .add(invoice.getSgstRate()).add(invoice.getSgstAmount())
+          .add(invoice.getIgstRate()).add(invoice.getIgstAmount())
+          .add(invoice.getTotalAmount()).add(invoice.getPaidAmount()).add(invoice.getBalanceAmount())
+          .add(invoice.getNotes()).add(invoice.getTermsAndConditions());
+        if (invoice.getProject() != null) {
+            fp.add(invoice.getProject().getName()).add(invoice.getProject().getLocation())
+              .add(invoice.getProject().getStartDate());
+            if (invoice.getProject().getClient() != null) {
+                fp.add(invoice.getProject().getClient().getGstin());
+            }
+        }
+        for (InvoiceItem item : invoice.getItems()) {
+            fp.add(item.getDescription()).add(item.getQuantity()).add(item.getUnitPrice()).add(item.getAmount());
+        }
+        addOrganization(fp, invoice.getOrganization());
+        return fp.digest();
+    }
+
+    private String payslipHash(Payslip payslip) {
+        Fingerprint fp = new Fingerprint();
+        fp.add(PdfService.LAYOUT_VERSION);
+        fp.add(payslip.getPayslipNumber()).add(payslip.getCreatedAt())
+          .add(payslip.getPayPeriodStart()).add(payslip.getPayPeriodEnd())
+          .add(payslip.getUserId()).add(payslip.getUserName()).add(payslip.getUser().getDesignation())
+          .add(payslip.getBasicSalary()).add(payslip.getDailySalary()).add(payslip.getDaysWorked())
+          .add(payslip.getOvertimeHours()).add(payslip.getOvertimeRate()).add(payslip.getOvertimeAmount())
+          .add(payslip.getAllowances()).add(payslip.getBonuses()).add(payslip.getGrossSalary())
+          .add(payslip.getTaxDeduction()).add(payslip.getInsuranceDeduction()).add(payslip.getOtherDeductions())
+          .add(payslip.getTotalDeductions()).add(payslip.getNetSalary()).add(payslip.getNotes());
+        // Printed on the payslip; saved at generation, so later holiday edits do not change it
+        fp.add(pdfService.getPayslipWorkingDays(payslip));
+        addOrganization(fp, payslip.getOrganization());
+        return fp.digest();
+    }
+
+    private void addOrganization(Fingerprint fp, Organization org) {
+        fp.add(org.getName()).add(org.getLogoUrl()).add(org.getAddress())
+          .add(org.getAddressLine1()).add(org.getAddressLine2()).add(org.getCity())
+          .add(org.getState()).add(org.getPincode())
+          .add(org.getContactPhone()).add(org.getContactEmail())
+          .add(org.getGstin()).add(org.getPan()).add(org.getCoaRegNumber())
+          .add(org.getBankName()).add(org.getBankAccountNumber()).add(org.getBankIfsc())
+          .add(org.getBankBranch()).add(org.getBankAccountName());
+    }
+
+    /**
+     * A PDF ready to be written, e.g. from a StreamingResponseBody.
+     */
+    @FunctionalInterface
+    public interface RenderedPdf {
+        void writeTo(OutputStream out) throws IOException;
+
+        /**
+         * Release what the PDF holds (a freshly rendered one is a temporary file). Safe after writeTo.
+         */
+        default void discard() {
+        }
+
+        /**
+         * Response body for the request. discard() runs when the async request completes, so nothing
+         * is left behind if writeTo never runs (client gone, async timeout, executor full).
+         */
+        default StreamingResponseBody toResponseBody(HttpServletRequest request) {
+            WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(this, new CallableProcessingInterceptor() {
+                @Override
+                public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                    discard();
+                }
+            });
+            return this::writeTo;
+        }
+    }
+
+    @FunctionalInterface
+    private interface PdfRenderer {
+        void render(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Accumulates field values into a SHA-256 digest. Each value is length-prefixed so that
+     * adjacent fields cannot run together, and amounts are normalized to two decimals since
+     * in-memory and reloaded entities can carry different scales for the same printed value.
+     */
+    private static class Fingerprint {
+        private final MessageDigest digest;
+
+        Fingerprint() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        Fingerprint add(Object value) {
+            String text;
+            if (value == null) {
+                text = "\u0000";
+            } else if (value instanceof BigDecimal number) {
+                text = number.setScale(2, RoundingMode.HALF_UP).toPlainString();
+            } else {
+                text = value.toString();
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ':');
+            digest.update(bytes);
+            return this;
+        }
+
+        String digest() {
+            return HexFormat.of().formatHex(digest.digest());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Runs interactive PDF rendering on a bounded pool instead of the request thread.
+ *
+ * The calling thread waits for the result, but at most render-threads documents are laid out
+ * at once and at most render-queue-capacity wait; anything beyond that is rejected with
+ * {@link RenderingBusyException}, which controllers map to 503 with a Retry-After header.
+ *
+ * Metrics (via Actuator /actuator/metrics):
+ *   executor.* (name=pdfRenderExecutor) - queue depth, active threads, completed tasks
+ *   pdf.render                          - render time, tagged by document type
+ *   pdf.render.rejected                 - rejected renders, tagged by document type
+ */
+@Service
+public class PdfRenderingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfRenderingService.class);
+
+    private final ThreadPoolTaskExecutor pdfRenderExecutor;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.pdf.render-timeout-seconds:60}")
+    private long renderTimeoutSeconds;
+
+    @Value("${app.pdf.retry-after-seconds:5}")
+    private int retryAfterSeconds;
+
+    @Autowired
+    public PdfRenderingService(@Qualifier("pdfRenderExecutor") ThreadPoolTaskExecutor pdfRenderExecutor,
+                               MeterRegistry meterRegistry) {
+        this.pdfRenderExecutor = pdfRenderExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Run a rendering task on the PDF pool and wait for its result.
+     *
+     * @param documentType Metric tag, e.g. "invoice" or "payslip"
+     * @throws RenderingBusyException if the pool and its queue are full
+     */
+    public <T> T render(String documentType, Callable<T> task) {
+        return render(documentType, task, result -> { });
+    }
+
+    /**
+     * Like {@link #render(String, Callable)}, for results that hold resources (e.g. a temporary file).
+     * If the caller stops waiting (timeout or interrupt), the result is passed to discard instead,
+     * whether the task had already finished or finishes later.
+     */
+    public <T> T render(String documentType, Callable<T> task, Consumer<? super T> discard) {
+        // Set by whichever side is first: the task finishing, or the caller giving up on it
+        AtomicBoolean settled = new AtomicBoolean();
+        Timer timer = Timer.builder("pdf.render")
+                .description("Time spent rendering PDFs")
+                .tag("type", documentType)
+                .register(meterRegistry);
+
+        Future<T> future;
+        try {
+            future = pdfRenderExecutor.submit(() -> {
+                T result = timer.recordCallable(task);
+                if (!settled.compareAndSet(false, true)) {
+                    discard.accept(result);
+                }
+                return result;
+            });
+        } catch (TaskRejectedException e) {
+            Counter.builder("pdf.render.rejected")
+                    .description("PDF renders rejected because the rendering queue was full")
+                    .tag("type", documentType)
+                    .register(meterRegistry)
+                    .increment();
+            logger.warn("PDF rendering queue full, rejecting {} render", documentType);
+            throw new RenderingBusyException(retryAfterSeconds);
+        }
+
+        try {
+            return future.get(renderTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            abandon(future, settled, discard);
+            throw new RuntimeException("PDF rendering timed out after " + renderTimeoutSeconds + " seconds", e);
+        } catch (InterruptedException e) {
+            abandon(future, settled, discard);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for PDF rendering", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("Failed to generate PDF", cause);
+        }
+    }
+
+    private static <T> void abandon(Future<T> future, AtomicBoolean settled, Consumer<? super T> discard) {
+        if (settled.compareAndSet(false, true)) {
+            // The task discards its own result if it still finishes
+            future.cancel(true);
+            return;
+        }
+        // The task finished just before we gave up, so its result is ours to discard
+        boolean interrupted = Thread.interrupted();
+        try {
+            discard.accept(future.get());
+        } catch (InterruptedException | ExecutionException e) {
+            // Nothing to discard
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Thrown when the rendering pool cannot accept more work.
+     */
+    public static class RenderingBusyException extends RuntimeException {
+        private final int retryAfterSeconds;
+
+        public RenderingBusyException(int retryAfterSeconds) {
+            super("PDF rendering is busy, please retry shortly");
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
@@ -2,7 +2,6 @@ package org.example.service;
 
 import com.itextpdf.html2pdf.HtmlConverter;
 import com.itextpdf.io.image.ImageData;
-import com.itextpdf.io.image.ImageDataFactory;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
@@ -13,18 +12,19 @@ import com.itextpdf.layout.element.Cell;
 import com.itextpdf.layout.properties.TextAlignment;
 import com.itextpdf.layout.properties.UnitValue;
 import com.itextpdf.layout.properties.HorizontalAlignment;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.example.models.Invoice;
 import org.example.models.InvoiceItem;
 import org.example.models.Organization;
 import org.example.models.Payslip;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.time.format.DateTimeFormatter;
@@ -36,13 +36,85 @@ public class PdfService {
     private static final Logger logger = LoggerFactory.getLogger(PdfService.class);
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MMM dd, yyyy");
     private static final NumberFormat CURRENCY_FORMATTER = NumberFormat.getCurrencyInstance(new Locale("en", "IN"));
-    private static final String DEFAULT_LOGO_PATH = "static/images/firm-logo.jpg";
+    static final String DEFAULT_LOGO_PATH = "static/images/firm-logo.jpeg";
+
+    // Bump whenever the PDF layout changes so previously stored renders are no longer reused
+    public static final String LAYOUT_VERSION = "2";
+
+    private final LogoImageCache logoImageCache;
+    private final InvoiceTemplateRenderer invoiceTemplateRenderer;
+    private final WorkingDayCalendarService workingDayCalendarService;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public PdfService(LogoImageCache logoImageCache, InvoiceTemplateRenderer invoiceTemplateRenderer,
+                      WorkingDayCalendarService workingDayCalendarService, MeterRegistry meterRegistry) {
+        this.logoImageCache = logoImageCache;
+        this.invoiceTemplateRenderer = invoiceTemplateRenderer;
+        this.workingDayCalendarService = workingDayCalendarService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Identify how an invoice will be laid out: its HTML template and that template's version,
+     * or "builtin" when there is no template. Part of the stored PDF key.
+     */
+    public String getInvoiceLayoutKey(Invoice invoice) {
+        InvoiceTemplateRenderer.CompiledTemplate template = invoiceTemplateRenderer.resolve(invoice);
+        return template != null ? "template:" + template.getId() + ":" + template.getVersion() : "builtin";
+    }
+
+    /**
+     * Working days in the payslip's pay period as saved when it was generated. Payslips saved
+     * without the count (only if the startup backfill failed) use the current calendar.
+     */
+    public long getPayslipWorkingDays(Payslip payslip) {
+        if (payslip.getWorkingDaysInPeriod() != null) {
+            return payslip.getWorkingDaysInPeriod();
+        }
+        return workingDayCalendarService.countWorkingDays(
+                payslip.getOrganization().getId(), payslip.getPayPeriodStart(), payslip.getPayPeriodEnd());
+    }
 
     public byte[] generateInvoicePdf(Invoice invoice) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        generateInvoicePdf(invoice, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Render the invoice PDF straight into the given stream, e.g. the HTTP response.
+     * The stream is flushed but not closed.
+     *
+     * Invoices with an HTML template (their own or the organization's default) are rendered
+     * from it; otherwise the built-in layout is used. Layout time is recorded in the
+     * pdf.invoice.layout timer, tagged by engine, so the two can be compared.
+     */
+    public void generateInvoicePdf(Invoice invoice, OutputStream out) {
         logger.info("Generating PDF for invoice: {}", invoice.getInvoiceNumber());
 
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            PdfDocument pdfDoc = new PdfDocument(new PdfWriter(baos));
+        InvoiceTemplateRenderer.CompiledTemplate template = invoiceTemplateRenderer.resolve(invoice);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            if (template != null) {
+                invoiceTemplateRenderer.render(invoice, template, out);
+            } else {
+                generateBuiltinInvoicePdf(invoice, out);
+            }
+        } finally {
+            sample.stop(Timer.builder("pdf.invoice.layout")
+                    .description("Time spent laying out invoice PDFs")
+                    .tag("engine", template != null ? "template" : "builtin")
+                    .register(meterRegistry));
+        }
+        logger.info("PDF generated successfully for invoice: {}", invoice.getInvoiceNumber());
+    }
+
+    private void generateBuiltinInvoicePdf(Invoice invoice, OutputStream out) {
+        try {
+            PdfWriter writer = new PdfWriter(out);
+            writer.setCloseStream(false);
+            PdfDocument pdfDoc = new PdfDocument(writer);
             Document document = new Document(pdfDoc);
 
             // Add header
@@ -64,9 +136,7 @@ public class PdfService {
             addFooter(document, invoice);
 
             document.close();
-            
-            logger.info("PDF generated successfully for invoice: {}", invoice.getInvoiceNumber());
-            return baos.toByteArray();
+            out.flush();
 
         } catch (Exception e) {
             logger.error("Failed to generate PDF for invoice: {}", invoice.getInvoiceNumber(), e);
@@ -85,23 +155,7 @@ public class PdfService {
         Cell leftCell = new Cell().setBorder(null);
         
         // Add logo (from organization logo URL if available)
-        if (org.getLogoUrl() != null && !org.getLogoUrl().trim().isEmpty()) {
-            try {
-                java.net.URL logoUrl = new java.net.URL(org.getLogoUrl());
-                ImageData logoImageData = ImageDataFactory.create(logoUrl);
-                Image logo = new Image(logoImageData);
-                logo.setWidth(100);
-                logo.setHeight(60);
-                logo.setHorizontalAlignment(HorizontalAlignment.LEFT);
-                leftCell.add(logo);
-                leftCell.add(new Paragraph("\n").setFontSize(6));
-            } catch (Exception e) {
-                logger.warn("Could not load logo from URL: {}", e.getMessage());
-                addLogoToCell(leftCell); // Fall back to default logo
-            }
-        } else {
-            addLogoToCell(leftCell);
-        }
+        addLogoToCell(leftCell, org.getLogoUrl());
 
         // Organization name
         Paragraph orgName = new Paragraph(org.getName())
@@ -396,44 +450,47 @@ public class PdfService {
         return number != null ? number.stripTrailingZeros().toPlainString() : "0";
     }
 
-    private void addLogoToCell(Cell cell) {
-        try {
-            ClassPathResource logoResource = new ClassPathResource(DEFAULT_LOGO_PATH);
-            if (logoResource.exists()) {
-                try (InputStream logoStream = logoResource.getInputStream()) {
-                    byte[] logoBytes = logoStream.readAllBytes();
-                    ImageData logoImageData = ImageDataFactory.create(logoBytes);
-                    Image logo = new Image(logoImageData);
-                    
-                    // Scale logo to appropriate size for invoice header
-                    logo.setWidth(100);
-                    logo.setHeight(60);
-                    logo.setHorizontalAlignment(HorizontalAlignment.LEFT);
-                    
-                    cell.add(logo);
-                    cell.add(new Paragraph("\n").setFontSize(6)); // Small spacing after logo
-                    
-                    logger.debug("Successfully added logo to PDF");
-                } catch (IOException e) {
-                    logger.warn("Error reading logo file: {}", e.getMessage());
-                }
-            } else {
-                logger.warn("Logo file not found at path: {}", DEFAULT_LOGO_PATH);
-            }
-        } catch (Exception e) {
-            logger.warn("Could not load logo image: {}", e.getMessage());
-            // Continue without logo - this ensures PDF generation doesn't fail
+    private void addLogoToCell(Cell cell, String logoUrl) {
+        // Parsed images are cached, so bulk rendering does not reload the logo for every document
+        ImageData logoImageData = logoImageCache.getLogo(logoUrl);
+        if (logoImageData == null) {
+            logoImageData = logoImageCache.getClasspathImage(DEFAULT_LOGO_PATH); // Fall back to default logo
         }
+        if (logoImageData == null) {
+            return; // Continue without logo - this ensures PDF generation doesn't fail
+        }
+
+        Image logo = new Image(logoImageData);
+
+        // Scale logo to appropriate size for invoice header
+        logo.setWidth(100);
+        logo.setHeight(60);
+        logo.setHorizontalAlignment(HorizontalAlignment.LEFT);
+
+        cell.add(logo);
+        cell.add(new Paragraph("\n").setFontSize(6)); // Small spacing after logo
     }
 
     /**
      * Generate PDF for payslip
      */
     public byte[] generatePayslipPdf(Payslip payslip) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        generatePayslipPdf(payslip, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Render the payslip PDF straight into the given stream, e.g. the HTTP response.
+     * The stream is flushed but not closed.
+     */
+    public void generatePayslipPdf(Payslip payslip, OutputStream out) {
         logger.info("Generating PDF for payslip: {}", payslip.getPayslipNumber());
 
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            PdfDocument pdfDoc = new PdfDocument(new PdfWriter(baos));
+        try {
+            PdfWriter writer = new PdfWriter(out);
+            writer.setCloseStream(false);
+            PdfDocument pdfDoc = new PdfDocument(writer);
             Document document = new Document(pdfDoc);
 
             // Add header
@@ -458,7 +515,7 @@ public class PdfService {
             addPayslipFooter(document, payslip);
 
             document.close();
-            return baos.toByteArray();
+            out.flush();
 
         } catch (Exception e) {
             logger.error("Error generating payslip PDF: {}", e.getMessage(), e);
@@ -471,7 +528,7 @@ public class PdfService {
         
         // Left cell with logo and organization info
         Cell leftCell = new Cell();
-        addLogoToCell(leftCell);
+        addLogoToCell(leftCell, payslip.getOrganization().getLogoUrl());
         leftCell.add(new Paragraph(payslip.getOrganizationName()).setBold().setFontSize(16));
         if (payslip.getOrganization().getAddress() != null) {
             leftCell.add(new Paragraph(payslip.getOrganization().getAddress()).setFontSize(10));
@@ -506,8 +563,8 @@ public class PdfService {
 
         Cell rightCell = new Cell();
         rightCell.add(new Paragraph("Salary Information").setBold().setFontSize(14).setMarginBottom(10));
-        // Calculate monthly salary from daily salary and working days in period
-        long totalWorkingDaysInPeriod = calculateWorkingDaysInPeriod(payslip.getPayPeriodStart(), payslip.getPayPeriodEnd());
+        // Calculate monthly salary from daily salary and the working days saved when the payslip was generated
+        long totalWorkingDaysInPeriod = getPayslipWorkingDays(payslip);
         BigDecimal monthlySalary = payslip.getDailySalary().multiply(BigDecimal.valueOf(totalWorkingDaysInPeriod));
         rightCell.add(new Paragraph("Monthly Salary: " + formatCurrency(monthlySalary)).setFontSize(12));
         rightCell.add(new Paragraph("Daily Rate: " + formatCurrency(payslip.getDailySalary())).setFontSize(12));
@@ -650,23 +707,4 @@ public class PdfService {
                 .setMarginTop(30)
                 .setItalic());
     }
-
-    /**
-     * Calculate working days in a period (excluding weekends)
-     */
-    private long calculateWorkingDaysInPeriod(java.time.LocalDate startDate, java.time.LocalDate endDate) {
-        long workingDays = 0;
-        java.time.LocalDate currentDate = startDate;
-        
-        while (!currentDate.isAfter(endDate)) {
-            // Check if it's a weekday (Monday = 1, Sunday = 7)
-            int dayOfWeek = currentDate.getDayOfWeek().getValue();
-            if (dayOfWeek >= 1 && dayOfWeek <= 5) { // Monday to Friday
-                workingDays++;
-            }
-            currentDate = currentDate.plusDays(1);
-        }
-        
-        return workingDays;
-    }
 }
@@ -0,0 +1,152 @@
+package org.example.service;
+
+import org.example.models.Permission;
+import org.example.models.Role;
+import org.example.repository.PermissionRepository;
+import org.example.repository.RoleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Permissions numbered by ordinal, and each role's permissions as a bitset over those ordinals.
+ *
+ * The registry is built from the database on first use and kept as one immutable snapshot, so
+ * checking whether a role grants a permission is a map lookup and a bit test with no allocation.
+ * Code that adds permissions or changes which permissions a role has must call
+ * {@link #invalidate()}; the next check rebuilds the snapshot.
+ */
+@Service
+public class PermissionRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(PermissionRegistry.class);
+
+    private final PermissionRepository permissionRepository;
+    private final RoleRepository roleRepository;
+
+    private volatile Snapshot snapshot;
+    // Bumped on every invalidation, so a snapshot built from data read before it is not kept
+    private final AtomicLong version = new AtomicLong();
+
+    @Autowired
+    public PermissionRegistry(PermissionRepository permissionRepository, RoleRepository roleRepository) {
+        this.permissionRepository = permissionRepository;
+        this.roleRepository = roleRepository;
+    }
+
+    /**
+     * The ordinal of the permission, or -1 if no permission has that name.
+     */
+    public int ordinal(String permissionName) {
+        Integer ordinal = current().ordinals().get(permissionName);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    /**
+     * Whether the role grants the permission with the given ordinal.
+     */
+    public boolean roleHas(Role role, int ordinal) {
+        Snapshot current = current();
+        if (role == null || ordinal < 0 || ordinal >= current.names().length) {
+            return false;
+        }
+        long[] bits = role.getId() != null ? current.roleBits().get(role.getId()) : null;
+        if (bits == null) {
+            // Role not in the snapshot (created since it was built): check its own permissions
+            return roleHasByName(role, current.names()[ordinal]);
+        }
+        int word = ordinal >>> 6;
+        return word < bits.length && (bits[word] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Drop the snapshot once the current transaction commits, or at once if there is none.
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    clear();
+                }
+            });
+        } else {
+            clear();
+        }
+    }
+
+    private void clear() {
+        version.incrementAndGet();
+        snapshot = null;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot != null) {
+                return snapshot;
+            }
+            long builtAt = version.get();
+            Snapshot built = build();
+            if (version.get() == builtAt) {
+                snapshot = built;
+            }
+            return built;
+        }
+    }
+
+    private Snapshot build() {
+        // Ordered by id so ordinals stay the same from one build to the next
+        List<Permission> permissions = permissionRepository.findAll();
+        permissions.sort(Comparator.comparing(Permission::getId));
+
+        Map<String, Integer> ordinals = new HashMap<>();
+        String[] names = new String[permissions.size()];
+        for (Permission permission : permissions) {
+            names[ordinals.size()] = permission.getName();
+            ordinals.put(permission.getName(), ordinals.size());
+        }
+
+        Map<Long, long[]> roleBits = new HashMap<>();
+        for (Role role : roleRepository.findAll()) {
+            long[] bits = new long[(names.length + 63) >>> 6];
+            for (Permission permission : role.getPermissions()) {
+                Integer ordinal = ordinals.get(permission.getName());
+                if (ordinal != null) {
+                    bits[ordinal >>> 6] |= 1L << ordinal;
+                }
+            }
+            roleBits.put(role.getId(), bits);
+        }
+
+        logger.debug("Built permission registry: {} permissions, {} roles", names.length, roleBits.size());
+        return new Snapshot(Map.copyOf(ordinals), names, Map.copyOf(roleBits));
+    }
+
+    private static boolean roleHasByName(Role role, String permissionName) {
+        if (role.getPermissions() == null) {
+            return false;
+        }
+        for (Permission permission : role.getPermissions()) {
+            if (permissionName.equals(permission.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Snapshot(Map<String, Integer> ordinals, String[] names, Map<Long, long[]> roleBits) {
+    }
+}
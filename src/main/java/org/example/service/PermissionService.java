@@ -3,6 +3,7 @@ package org.example.service;
 import org.example.models.Permission;
 import org.example.models.Role;
 import org.example.models.User;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.HashSet;
@@ -12,6 +13,13 @@ import java.util.stream.Collectors;
 @Service
 public class PermissionService {
 
+    private final PermissionRegistry permissionRegistry;
+
+    @Autowired
+    public PermissionService(PermissionRegistry permissionRegistry) {
+        this.permissionRegistry = permissionRegistry;
+    }
+
     /**
      * Check if a user has a specific permission
      * @param user The user to check
@@ -23,7 +31,7 @@ public class PermissionService {
             return false;
         }
 
-        return getUserPermissions(user).contains(permissionName);
+        return userHas(user, permissionRegistry.ordinal(permissionName));
     }
 
     /**
@@ -37,9 +45,8 @@ public class PermissionService {
             return false;
         }
 
-        Set<String> userPermissions = getUserPermissions(user);
         for (String permissionName : permissionNames) {
-            if (userPermissions.contains(permissionName)) {
+            if (permissionName != null && userHas(user, permissionRegistry.ordinal(permissionName))) {
                 return true;
             }
         }
@@ -57,15 +64,27 @@ public class PermissionService {
             return false;
         }
 
-        Set<String> userPermissions = getUserPermissions(user);
         for (String permissionName : permissionNames) {
-            if (!userPermissions.contains(permissionName)) {
+            if (permissionName == null || !userHas(user, permissionRegistry.ordinal(permissionName))) {
                 return false;
             }
         }
         return true;
     }
 
+    // Whether any of the user's roles grants the permission; a bit test per role, no allocation
+    private boolean userHas(User user, int ordinal) {
+        if (ordinal < 0 || user.getRoles() == null) {
+            return false;
+        }
+        for (Role role : user.getRoles()) {
+            if (permissionRegistry.roleHas(role, ordinal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Check if a user has a specific role
      * @param user The user to check
@@ -13,6 +13,7 @@ import org.example.models.Client;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -23,6 +24,7 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
 
 import java.time.LocalDate;
 import java.util.HashMap;
@@ -52,9 +54,14 @@ public class ProjectService {
     private final PhaseService phaseService;
     private final org.example.repository.ProjectAttachmentRepository projectAttachmentRepository;
     private final FileStorageService fileStorageService;
+    private final AttachmentBlobService attachmentBlobService;
+
+    // Largest file accepted by multipart attachment uploads
+    @Value("${app.attachments.max-size:2GB}")
+    private DataSize maxAttachmentSize;
 
     @Autowired
-    public ProjectService(ProjectRepository projectRepository, UserRepository userRepository, TaskRepository taskRepository, ClientRepository clientRepository, AuditService auditService, PhaseService phaseService, FileStorageService fileStorageService, org.example.repository.ProjectAttachmentRepository projectAttachmentRepository) {
+    public ProjectService(ProjectRepository projectRepository, UserRepository userRepository, TaskRepository taskRepository, ClientRepository clientRepository, AuditService auditService, PhaseService phaseService, FileStorageService fileStorageService, org.example.repository.ProjectAttachmentRepository projectAttachmentRepository, AttachmentBlobService attachmentBlobService) {
         this.projectRepository = projectRepository;
         this.userRepository = userRepository;
         this.taskRepository = taskRepository;
@@ -63,6 +70,7 @@ public class ProjectService {
         this.phaseService = phaseService;
         this.fileStorageService = fileStorageService;
         this.projectAttachmentRepository = projectAttachmentRepository;
+        this.attachmentBlobService = attachmentBlobService;
     }
 
     private User getCurrentAuthenticatedUser() {
@@ -812,7 +820,7 @@ public class ProjectService {
     }
 
     @Transactional
-    public org.example.models.ProjectAttachment uploadAttachment(Long projectId, org.springframework.web.multipart.MultipartFile file, User uploader, org.example.models.enums.ProjectStage stage, org.example.models.enums.DrawingType drawingType) {
+    public org.example.models.ProjectAttachment uploadAttachment(Long projectId, org.springframework.web.multipart.MultipartFile file, User uploader, org.example.models.enums.ProjectStage stage, org.example.models.enums.DrawingType drawingType, String drawingNumber) {
         Project project = projectRepository.findById(projectId)
                 .orElseThrow(() -> new IllegalArgumentException("Project not found"));
         
@@ -821,35 +829,30 @@ public class ProjectService {
              throw new org.springframework.security.access.AccessDeniedException("User cannot upload to project in another organization");
         }
 
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("Cannot store empty file");
+        }
+        // Before storing, so a bad drawing number is a 400 rather than a failed upload
+        checkDrawingNumber(drawingNumber);
+
         try {
-            String directory = "projects/" + projectId + "/attachments";
-            String originalFilename = file.getOriginalFilename();
-            String baseName = "file";
-            if (originalFilename != null) {
-                if (originalFilename.contains(".")) {
-                    baseName = originalFilename.substring(0, originalFilename.lastIndexOf("."));
-                } else {
-                    baseName = originalFilename;
-                }
-            }
+            // Stored once per organization by content; repeated uploads just reference the existing blob
+            org.example.models.AttachmentBlob blob = attachmentBlobService.store(project.getOrganization().getId(), file);
 
-            // storeFile adds UUID and extension
-            String storedUrl = fileStorageService.storeFile(file, directory, baseName);
-            
-            // Extract S3 key from the returned URL (format: /api/files/{key})
-            String s3Key = storedUrl.replace("/api/files/", "");
-            
             org.example.models.ProjectAttachment attachment = org.example.models.ProjectAttachment.builder()
                     .name(file.getOriginalFilename())
                     .originalFilename(file.getOriginalFilename())
-                    .fileUrl(s3Key) // Store the S3 key
+                    .fileUrl(blob.getStorageKey()) // Store the S3 key
+                    .blob(blob)
                     .contentType(file.getContentType())
                     .size(file.getSize())
                     .uploadedBy(uploader)
                     .project(project)
                     .stage(stage)
                     .drawingType(drawingType)
+                    .drawingNumber(drawingNumber)
                     .build();
+            assignRevision(attachment);
             
             return projectAttachmentRepository.save(attachment);
         } catch (Exception e) {
@@ -857,6 +860,174 @@ public class ProjectService {
         }
     }
 
+    /**
+     * Starts a multipart upload for a large attachment. The client uploads the parts itself,
+     * several at a time, to URLs from getAttachmentPartUrls, then calls completeAttachmentUpload.
+     */
+    @Transactional(readOnly = true)
+    public FileStorageService.MultipartUpload startAttachmentUpload(Long projectId, String originalFilename,
+                                                                    String contentType, long size, User uploader) {
+        Project project = findProjectForUpload(projectId, uploader);
+        if (originalFilename == null || originalFilename.isBlank()) {
+            throw new IllegalArgumentException("Filename is required");
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("File size must be positive");
+        }
+        if (size > maxAttachmentSize.toBytes()) {
+            throw new IllegalArgumentException("File size exceeds the maximum of " + maxAttachmentSize.toMegabytes() + "MB");
+        }
+
+        String baseName = originalFilename;
+        String extension = "";
+        if (originalFilename.contains(".")) {
+            baseName = originalFilename.substring(0, originalFilename.lastIndexOf("."));
+            extension = originalFilename.substring(originalFilename.lastIndexOf("."));
+        }
+        // Same naming as storeFile: base name plus a short UUID to prevent collisions
+        String storagePath = attachmentDirectory(project.getId()) + baseName.replaceAll("[/\\\\]", "_") + "_"
+                + java.util.UUID.randomUUID().toString().substring(0, 8) + extension;
+
+        return fileStorageService.startMultipartUpload(storagePath, contentType, size);
+    }
+
+    @Transactional(readOnly = true)
+    public Map<Integer, String> getAttachmentPartUrls(Long projectId, String storagePath, String uploadId,
+                                                      List<Integer> partNumbers, User uploader) {
+        findProjectForUpload(projectId, uploader);
+        checkAttachmentPath(projectId, storagePath);
+
+        Map<Integer, String> urls = new java.util.LinkedHashMap<>();
+        for (Integer partNumber : partNumbers) {
+            if (partNumber == null || partNumber < 1 || partNumber > FileStorageService.MAX_MULTIPART_PARTS) {
+                throw new IllegalArgumentException("Invalid part number: " + partNumber);
+            }
+            urls.put(partNumber, fileStorageService.generatePresignedPartUrl(storagePath, uploadId, partNumber));
+        }
+        return urls;
+    }
+
+    @Transactional(readOnly = true)
+    public List<FileStorageService.UploadedPart> getUploadedAttachmentParts(Long projectId, String storagePath,
+                                                                           String uploadId, User uploader) {
+        findProjectForUpload(projectId, uploader);
+        checkAttachmentPath(projectId, storagePath);
+        return fileStorageService.listUploadedParts(storagePath, uploadId);
+    }
+
+    /**
+     * Assembles the uploaded parts and records the attachment.
+     */
+    @Transactional
+    public org.example.models.ProjectAttachment completeAttachmentUpload(Long projectId, String storagePath, String uploadId,
+                                                                         List<FileStorageService.UploadedPart> parts,
+                                                                         String originalFilename, String contentType,
+                                                                         User uploader,
+                                                                         org.example.models.enums.ProjectStage stage,
+                                                                         org.example.models.enums.DrawingType drawingType,
+                                                                         String drawingNumber) {
+        Project project = findProjectForUpload(projectId, uploader);
+        checkAttachmentPath(projectId, storagePath);
+        checkDrawingNumber(drawingNumber);
+        if (parts == null || parts.isEmpty()) {
+            throw new IllegalArgumentException("At least one part is required");
+        }
+        List<FileStorageService.UploadedPart> orderedParts = parts.stream()
+                .sorted(java.util.Comparator.comparingInt(FileStorageService.UploadedPart::partNumber))
+                .toList();
+        for (int i = 0; i < orderedParts.size(); i++) {
+            if (orderedParts.get(i).partNumber() != i + 1) {
+                fileStorageService.abortMultipartUpload(storagePath, uploadId);
+                throw new IllegalArgumentException("Part " + (i + 1) + " is missing; the upload was discarded");
+            }
+        }
+
+        String storedUrl;
+        try {
+            // Also checks the assembled size against the size given when the upload was started
+            storedUrl = fileStorageService.completeMultipartUpload(storagePath, uploadId, orderedParts);
+        } catch (FileStorageService.IncompleteUploadException e) {
+            fileStorageService.abortMultipartUpload(storagePath, uploadId);
+            throw new IllegalArgumentException("Upload is incomplete: " + e.getMessage() + "; the upload was discarded", e);
+        }
+        long size = fileStorageService.getFileMetadata(storedUrl).contentLength();
+        org.example.models.AttachmentBlob blob = attachmentBlobService.adopt(
+                project.getOrganization().getId(), storagePath, size, contentType);
+
+        org.example.models.ProjectAttachment attachment = org.example.models.ProjectAttachment.builder()
+                .name(originalFilename)
+                .originalFilename(originalFilename)
+                .fileUrl(blob.getStorageKey()) // Store the S3 key
+                .blob(blob)
+                .contentType(contentType)
+                .size(size)
+                .uploadedBy(uploader)
+                .project(project)
+                .stage(stage)
+                .drawingType(drawingType)
+                .drawingNumber(drawingNumber)
+                .build();
+        assignRevision(attachment);
+
+        return projectAttachmentRepository.save(attachment);
+    }
+
+    @Transactional(readOnly = true)
+    public void abortAttachmentUpload(Long projectId, String storagePath, String uploadId, User uploader) {
+        findProjectForUpload(projectId, uploader);
+        checkAttachmentPath(projectId, storagePath);
+        fileStorageService.abortMultipartUpload(storagePath, uploadId);
+    }
+
+    /**
+     * Makes the attachment the next revision of its drawing and the drawing's latest revision.
+     * Attachments without a drawing number are standalone: revision 1, always latest.
+     */
+    private void assignRevision(org.example.models.ProjectAttachment attachment) {
+        String drawingNumber = attachment.getDrawingNumber() != null ? attachment.getDrawingNumber().trim() : "";
+        attachment.setLatest(true);
+        if (drawingNumber.isEmpty()) {
+            attachment.setDrawingNumber(null);
+            attachment.setRevision(1);
+            return;
+        }
+
+        attachment.setDrawingNumber(drawingNumber);
+        Optional<org.example.models.ProjectAttachment> previous = projectAttachmentRepository
+                .findLatestRevisionForUpdate(attachment.getProject().getId(), drawingNumber);
+        previous.ifPresent(p -> p.setLatest(false));
+        attachment.setRevision(previous.map(p -> p.getRevision() + 1).orElse(1));
+    }
+
+    private static void checkDrawingNumber(String drawingNumber) {
+        if (drawingNumber != null && drawingNumber.trim().length() > 100) {
+            throw new IllegalArgumentException("Drawing number must be at most 100 characters");
+        }
+    }
+
+    private Project findProjectForUpload(Long projectId, User uploader) {
+        Project project = projectRepository.findById(projectId)
+                .orElseThrow(() -> new IllegalArgumentException("Project not found"));
+
+        // Security Check: Uploader must be in same org
+        if (!project.getOrganization().getId().equals(uploader.getOrganization().getId())) {
+             throw new org.springframework.security.access.AccessDeniedException("User cannot upload to project in another organization");
+        }
+        return project;
+    }
+
+    private static String attachmentDirectory(Long projectId) {
+        return "projects/" + projectId + "/attachments/";
+    }
+
+    // The storage path comes back from the client, so it must stay inside this project's attachments
+    private static void checkAttachmentPath(Long projectId, String storagePath) {
+        if (storagePath == null || !storagePath.startsWith(attachmentDirectory(projectId))
+                || storagePath.contains("..") || storagePath.indexOf('/', attachmentDirectory(projectId).length()) >= 0) {
+            throw new IllegalArgumentException("Invalid storage path");
+        }
+    }
+
     @Transactional
     public void deleteAttachment(Long projectId, Long attachmentId) {
         org.example.models.ProjectAttachment attachment = projectAttachmentRepository.findById(attachmentId)
@@ -871,11 +1042,22 @@ public class ProjectService {
              throw new org.springframework.security.access.AccessDeniedException("Access denied");
         }
 
-        // Delete from storage
-        fileStorageService.deleteFile(attachment.getFileUrl());
-        
         // Delete from DB
         projectAttachmentRepository.delete(attachment);
+
+        // Deleting the latest revision makes the previous one current again
+        if (Boolean.TRUE.equals(attachment.getLatest()) && attachment.getDrawingNumber() != null) {
+            projectAttachmentRepository.flush();
+            projectAttachmentRepository.findFirstByProjectIdAndDrawingNumberOrderByRevisionDesc(projectId, attachment.getDrawingNumber())
+                    .ifPresent(previous -> previous.setLatest(true));
+        }
+
+        // Delete from storage, once no other attachment shares the file
+        if (attachment.getBlob() != null) {
+            attachmentBlobService.release(attachment.getBlob());
+        } else {
+            fileStorageService.deleteFile(attachment.getFileUrl());
+        }
     }
 
     @Transactional(readOnly = true)
@@ -895,4 +1077,78 @@ public class ProjectService {
 
          return fileStorageService.generatePresignedDownloadUrl("/api/files/" + attachment.getFileUrl());
     }
+
+    /**
+     * One page of the project's current drawing register: the latest revision of each drawing plus
+     * standalone files, newest first. Pass the last ID of the previous page as beforeId.
+     */
+    @Transactional(readOnly = true)
+    public List<org.example.models.ProjectAttachment> getDrawingRegister(Long projectId, Long beforeId, int limit) {
+        Project project = projectRepository.findById(projectId)
+                .orElseThrow(() -> new IllegalArgumentException("Project not found"));
+
+        User currentUser = getCurrentAuthenticatedUser();
+        if (!project.getOrganization().getId().equals(currentUser.getOrganization().getId())) {
+             throw new org.springframework.security.access.AccessDeniedException("Access denied");
+        }
+
+        int pageSize = Math.min(Math.max(limit, 1), 200);
+        return projectAttachmentRepository.findRegisterPage(projectId,
+                beforeId != null ? beforeId : Long.MAX_VALUE, PageRequest.of(0, pageSize));
+    }
+
+    /**
+     * All revisions of a drawing, latest first.
+     */
+    @Transactional(readOnly = true)
+    public List<org.example.models.ProjectAttachment> getDrawingRevisions(Long projectId, String drawingNumber) {
+        Project project = projectRepository.findById(projectId)
+                .orElseThrow(() -> new IllegalArgumentException("Project not found"));
+
+        User currentUser = getCurrentAuthenticatedUser();
+        if (!project.getOrganization().getId().equals(currentUser.getOrganization().getId())) {
+             throw new org.springframework.security.access.AccessDeniedException("Access denied");
+        }
+
+        return projectAttachmentRepository.findByProjectIdAndDrawingNumberOrderByRevisionDesc(projectId,
+                drawingNumber != null ? drawingNumber.trim() : null);
+    }
+
+    /**
+     * Attachments of a project for a ZIP download, optionally limited to one stage and/or drawing type.
+     */
+    @Transactional(readOnly = true)
+    public List<org.example.models.ProjectAttachment> getAttachmentsForArchive(Long projectId,
+                                                                            org.example.models.enums.ProjectStage stage,
+                                                                            org.example.models.enums.DrawingType drawingType) {
+        Project project = projectRepository.findById(projectId)
+                .orElseThrow(() -> new IllegalArgumentException("Project not found"));
+
+        User currentUser = getCurrentAuthenticatedUser();
+        if (!project.getOrganization().getId().equals(currentUser.getOrganization().getId())) {
+             throw new org.springframework.security.access.AccessDeniedException("Access denied");
+        }
+
+        return projectAttachmentRepository.findForArchive(projectId, stage, drawingType);
+    }
+
+    /**
+     * Download URLs for every attachment of a project, keyed by attachment ID, for gallery views.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, String> generatePresignedDownloadUrls(Long projectId) {
+        Project project = projectRepository.findById(projectId)
+                .orElseThrow(() -> new IllegalArgumentException("Project not found"));
+
+        User currentUser = getCurrentAuthenticatedUser();
+        if (!project.getOrganization().getId().equals(currentUser.getOrganization().getId())) {
+             throw new org.springframework.security.access.AccessDeniedException("Access denied");
+        }
+
+        Map<Long, String> urls = new java.util.LinkedHashMap<>();
+        for (org.example.models.ProjectAttachment attachment : projectAttachmentRepository.findByProjectIdOrderByCreatedAtDesc(projectId)) {
+            urls.put(attachment.getId(), fileStorageService.generatePresignedDownloadUrl("/api/files/" + attachment.getFileUrl()));
+        }
+        return urls;
+    }
 }
\ No newline at end of file
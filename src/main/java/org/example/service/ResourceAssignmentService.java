@@ -33,17 +33,20 @@ public class ResourceAssignmentService {
     private final PhaseRepository phaseRepository;
     private final UserRepository userRepository;
     private final AuditService auditService;
+    private final WorkingDayCalendarService workingDayCalendarService;
 
     @Autowired
     public ResourceAssignmentService(
             ResourceAssignmentRepository resourceAssignmentRepository,
             PhaseRepository phaseRepository,
             UserRepository userRepository,
-            AuditService auditService) {
+            AuditService auditService,
+            WorkingDayCalendarService workingDayCalendarService) {
         this.resourceAssignmentRepository = resourceAssignmentRepository;
         this.phaseRepository = phaseRepository;
         this.userRepository = userRepository;
         this.auditService = auditService;
+        this.workingDayCalendarService = workingDayCalendarService;
     }
 
     private User getCurrentAuthenticatedUser() {
@@ -410,12 +413,18 @@ public class ResourceAssignmentService {
                 Long projectId = assignment.getPhase().getProject().getId();
                 String projectName = assignment.getPhase().getProject().getName();
                 
-                // Estimate weekly hours (total planned hours / weeks in assignment period)
+                // Spread planned hours evenly over the assignment's working days, and take this week's share
                 int assignmentHours = assignment.getPlannedHours();
                 if (assignment.getStartDate() != null && assignment.getEndDate() != null) {
-                    long totalDays = java.time.temporal.ChronoUnit.DAYS.between(assignment.getStartDate(), assignment.getEndDate()) + 1;
-                    long weeks = Math.max(1, totalDays / 7);
-                    assignmentHours = (int) (assignment.getPlannedHours() / weeks);
+                    Long organizationId = user.getOrganization().getId();
+                    long totalWorkingDays = workingDayCalendarService.countWorkingDays(
+                            organizationId, assignment.getStartDate(), assignment.getEndDate());
+                    LocalDate overlapStart = assignment.getStartDate().isAfter(weekStart) ? assignment.getStartDate() : weekStart;
+                    LocalDate overlapEnd = assignment.getEndDate().isBefore(weekEnd) ? assignment.getEndDate() : weekEnd;
+                    long weekWorkingDays = workingDayCalendarService.countWorkingDays(organizationId, overlapStart, overlapEnd);
+                    assignmentHours = totalWorkingDays > 0
+                            ? (int) (assignment.getPlannedHours() * weekWorkingDays / totalWorkingDays)
+                            : 0;
                 }
                 
                 totalHours += assignmentHours;
@@ -1,5 +1,7 @@
 package org.example.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -7,30 +9,49 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListPartsRequest;
 import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
 import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.UploadPartPresignRequest;
 
 import java.time.Duration;
 
 import jakarta.annotation.PostConstruct;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * S3 implementation of FileStorageService for production deployments.
@@ -46,6 +67,17 @@ import java.util.UUID;
  *   - AWS_S3_BUCKET: The S3 bucket name
  *   - AWS_REGION: The AWS region (e.g., us-east-1)
  *   - APP_STORAGE_TYPE: Set to "s3" to enable this service
+ *
+ * Object metadata (size, content type, ETag) is cached per key: filled on upload, on HEAD and
+ * from the headers of every GET, and dropped on delete. Serving a file whose metadata is cached
+ * costs a single GET. Only existing objects are cached, since presigned uploads bypass this
+ * service; entries expire so overwrites made by other instances are picked up.
+ *
+ * Presigned download URLs are cached per key and handed out again for up to
+ * app.storage.s3.url-cache-minutes (never past 90% of the URL's lifetime), so a gallery asking
+ * for the same attachments repeatedly gets stable URLs the browser can cache. The reuse window
+ * is kept short because a URL signed with instance-role credentials stops working when those
+ * temporary credentials expire, whatever its own expiry says.
  */
 @Service
 @Primary
@@ -54,6 +86,9 @@ public class S3FileStorageService implements FileStorageService {
 
     private static final Logger logger = LoggerFactory.getLogger(S3FileStorageService.class);
 
+    // User metadata holding the file size given when a multipart upload was started
+    private static final String DECLARED_LENGTH_METADATA = "declared-length";
+
     @Value("${AWS_S3_BUCKET:}")
     private String bucketName;
 
@@ -63,9 +98,22 @@ public class S3FileStorageService implements FileStorageService {
     @Value("${app.storage.s3.url-expiration-hours:24}")
     private int urlExpirationHours;
 
+    @Value("${app.storage.s3.url-cache-minutes:50}")
+    private long urlCacheMinutes;
+
     private S3Client s3Client;
     private S3Presigner presigner;
 
+    // S3 key -> metadata of an object known to exist
+    private final Cache<String, FileMetadata> metadataCache = Caffeine.newBuilder()
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .maximumSize(10_000)
+            .build();
+
+    // S3 key -> presigned download URL, reused until shortly before it expires. Built in init()
+    // since the lifetime depends on the configured expiry.
+    private Cache<String, String> downloadUrlCache;
+
     @PostConstruct
     public void init() {
         if (bucketName == null || bucketName.isEmpty()) {
@@ -73,6 +121,13 @@ public class S3FileStorageService implements FileStorageService {
             throw new FileStorageException("S3 bucket name not configured. Set AWS_S3_BUCKET environment variable.");
         }
 
+        // Hand out a cached URL only while it has at least 10% of its lifetime left
+        long reuseMinutes = Math.min(urlCacheMinutes, TimeUnit.HOURS.toMinutes(urlExpirationHours) * 9 / 10);
+        downloadUrlCache = Caffeine.newBuilder()
+                .expireAfterWrite(reuseMinutes, TimeUnit.MINUTES)
+                .maximumSize(20_000)
+                .build();
+
         try {
             s3Client = S3Client.builder()
                     .region(Region.of(region))
@@ -131,7 +186,9 @@ public class S3FileStorageService implements FileStorageService {
                     .contentLength(file.getSize())
                     .build();
 
-            s3Client.putObject(putRequest, RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
+            PutObjectResponse putResponse = s3Client.putObject(putRequest,
+                    RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
+            cacheUploaded(s3Key, file.getSize(), contentType, putResponse);
 
             logger.info("Stored file in S3: s3://{}/{}", bucketName, s3Key);
 
@@ -146,6 +203,49 @@ public class S3FileStorageService implements FileStorageService {
         }
     }
 
+    @Override
+    public String storeBytes(byte[] content, String storagePath, String contentType) throws FileStorageException {
+        try {
+            PutObjectRequest putRequest = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(storagePath)
+                    .contentType(contentType != null ? contentType : "application/octet-stream")
+                    .contentLength((long) content.length)
+                    .build();
+
+            PutObjectResponse putResponse = s3Client.putObject(putRequest, RequestBody.fromBytes(content));
+            cacheUploaded(storagePath, content.length, putRequest.contentType(), putResponse);
+
+            logger.info("Stored generated file in S3: s3://{}/{}", bucketName, storagePath);
+            return "/api/files/" + storagePath;
+
+        } catch (S3Exception e) {
+            throw new FileStorageException("S3 error storing file: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    @Override
+    public String storeStream(InputStream content, long contentLength, String storagePath, String contentType) throws FileStorageException {
+        try {
+            PutObjectRequest putRequest = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(storagePath)
+                    .contentType(contentType != null ? contentType : "application/octet-stream")
+                    .contentLength(contentLength)
+                    .build();
+
+            PutObjectResponse putResponse = s3Client.putObject(putRequest,
+                    RequestBody.fromInputStream(content, contentLength));
+            cacheUploaded(storagePath, contentLength, putRequest.contentType(), putResponse);
+
+            logger.info("Stored generated file in S3: s3://{}/{}", bucketName, storagePath);
+            return "/api/files/" + storagePath;
+
+        } catch (S3Exception e) {
+            throw new FileStorageException("S3 error storing file: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
     @Override
     public boolean deleteFile(String fileUrl) throws FileStorageException {
         try {
@@ -171,6 +271,8 @@ public class S3FileStorageService implements FileStorageService {
                     .build();
 
             s3Client.deleteObject(deleteRequest);
+            metadataCache.invalidate(s3Key);
+            downloadUrlCache.invalidate(s3Key);
             logger.info("Deleted file from S3: s3://{}/{}", bucketName, s3Key);
             return true;
 
@@ -191,17 +293,18 @@ public class S3FileStorageService implements FileStorageService {
                 return false;
             }
 
-            HeadObjectRequest headRequest = HeadObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(s3Key)
-                    .build();
-
-            s3Client.headObject(headRequest);
+            if (metadataCache.getIfPresent(s3Key) != null) {
+                return true;
+            }
+            metadataCache.put(s3Key, headMetadata(s3Key, fileUrl));
             return true;
 
         } catch (NoSuchKeyException e) {
             return false;
         } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return false;
+            }
             logger.warn("Error checking if file exists in S3: {}", e.getMessage());
             return false;
         }
@@ -224,7 +327,9 @@ public class S3FileStorageService implements FileStorageService {
                     .key(s3Key)
                     .build();
 
-            return s3Client.getObjectAsBytes(getRequest).asByteArray();
+            ResponseBytes<GetObjectResponse> object = s3Client.getObjectAsBytes(getRequest);
+            cacheFromGet(s3Key, fileUrl, object.response());
+            return object.asByteArray();
 
         } catch (NoSuchKeyException e) {
             throw new FileStorageException("File not found in S3: " + fileUrl);
@@ -234,26 +339,92 @@ public class S3FileStorageService implements FileStorageService {
     }
 
     @Override
-    public String getContentType(String fileUrl) {
+    public InputStream getFileStream(String fileUrl) throws FileStorageException {
         try {
-            if (fileUrl == null) {
-                return "application/octet-stream";
+            if (fileUrl == null || fileUrl.isEmpty()) {
+                throw new FileStorageException("File URL cannot be null or empty");
             }
 
             String s3Key = extractS3Key(fileUrl);
             if (s3Key == null) {
-                return getContentTypeFromExtension(fileUrl);
+                throw new FileStorageException("Invalid file URL: " + fileUrl);
             }
 
-            HeadObjectRequest headRequest = HeadObjectRequest.builder()
+            GetObjectRequest getRequest = GetObjectRequest.builder()
                     .bucket(bucketName)
                     .key(s3Key)
                     .build();
 
-            HeadObjectResponse response = s3Client.headObject(headRequest);
-            String contentType = response.contentType();
-            
-            return contentType != null ? contentType : getContentTypeFromExtension(fileUrl);
+            ResponseInputStream<GetObjectResponse> object = s3Client.getObject(getRequest);
+            cacheFromGet(s3Key, fileUrl, object.response());
+            return object;
+
+        } catch (NoSuchKeyException e) {
+            throw new FileStorageException("File not found in S3: " + fileUrl);
+        } catch (S3Exception e) {
+            throw new FileStorageException("S3 error reading file: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    @Override
+    public InputStream getFileStream(String fileUrl, long start, long end) throws FileStorageException {
+        try {
+            String s3Key = extractS3Key(fileUrl);
+            if (s3Key == null) {
+                throw new FileStorageException("Invalid file URL: " + fileUrl);
+            }
+
+            // Ranged GET: only the requested bytes leave S3
+            GetObjectRequest getRequest = GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(s3Key)
+                    .range("bytes=" + start + "-" + end)
+                    .build();
+
+            ResponseInputStream<GetObjectResponse> object = s3Client.getObject(getRequest);
+            cacheFromGet(s3Key, fileUrl, object.response());
+            return object;
+
+        } catch (NoSuchKeyException e) {
+            throw new FileStorageException("File not found in S3: " + fileUrl);
+        } catch (S3Exception e) {
+            throw new FileStorageException("S3 error reading file: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    @Override
+    public FileMetadata getFileMetadata(String fileUrl) throws FileStorageException {
+        try {
+            String s3Key = extractS3Key(fileUrl);
+            if (s3Key == null) {
+                throw new FileStorageException("Invalid file URL: " + fileUrl);
+            }
+
+            return metadataCache.get(s3Key, key -> headMetadata(key, fileUrl));
+
+        } catch (NoSuchKeyException e) {
+            throw new FileStorageException("File not found in S3: " + fileUrl);
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                throw new FileStorageException("File not found in S3: " + fileUrl);
+            }
+            throw new FileStorageException("S3 error reading file metadata: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    @Override
+    public String getContentType(String fileUrl) {
+        try {
+            if (fileUrl == null) {
+                return "application/octet-stream";
+            }
+
+            String s3Key = extractS3Key(fileUrl);
+            if (s3Key == null) {
+                return getContentTypeFromExtension(fileUrl);
+            }
+
+            return metadataCache.get(s3Key, key -> headMetadata(key, fileUrl)).contentType();
 
         } catch (Exception e) {
             return getContentTypeFromExtension(fileUrl);
@@ -336,24 +507,189 @@ public class S3FileStorageService implements FileStorageService {
                 throw new FileStorageException("Invalid file URL: " + fileUrl);
             }
 
-            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+            return downloadUrlCache.get(s3Key, this::presignDownload);
+
+        } catch (FileStorageException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new FileStorageException("Failed to generate presigned download URL", e);
+        }
+    }
+
+    private String presignDownload(String s3Key) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(s3Key)
+                .build();
+
+        GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofHours(urlExpirationHours))
+                .getObjectRequest(getObjectRequest)
+                .build();
+
+        PresignedGetObjectRequest presignedRequest = presigner.presignGetObject(presignRequest);
+        return presignedRequest.url().toString();
+    }
+
+    @Override
+    public MultipartUpload startMultipartUpload(String storagePath, String contentType, long contentLength) {
+        try {
+            CreateMultipartUploadResponse response = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
                     .bucket(bucketName)
-                    .key(s3Key)
+                    .key(storagePath)
+                    .contentType(contentType != null ? contentType : "application/octet-stream")
+                    // Carried over to the assembled object, where completion checks it
+                    .metadata(Map.of(DECLARED_LENGTH_METADATA, Long.toString(contentLength)))
+                    .build());
+
+            long partSize = FileStorageService.multipartPartSize(contentLength);
+            int partCount = (int) Math.max(1, (contentLength + partSize - 1) / partSize);
+            logger.info("Started multipart upload to s3://{}/{} ({} parts of {} bytes)",
+                    bucketName, storagePath, partCount, partSize);
+            return new MultipartUpload(response.uploadId(), storagePath, "/api/files/" + storagePath, partSize, partCount);
+
+        } catch (S3Exception e) {
+            throw new FileStorageException("S3 error starting multipart upload: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    @Override
+    public String generatePresignedPartUrl(String storagePath, String uploadId, int partNumber) {
+        try {
+            UploadPartRequest partRequest = UploadPartRequest.builder()
+                    .bucket(bucketName)
+                    .key(storagePath)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
                     .build();
 
-            GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
-                    .signatureDuration(Duration.ofHours(urlExpirationHours))
-                    .getObjectRequest(getObjectRequest)
+            UploadPartPresignRequest presignRequest = UploadPartPresignRequest.builder()
+                    .signatureDuration(Duration.ofHours(1))
+                    .uploadPartRequest(partRequest)
                     .build();
 
-            PresignedGetObjectRequest presignedRequest = presigner.presignGetObject(presignRequest);
-            return presignedRequest.url().toString();
+            return presigner.presignUploadPart(presignRequest).url().toString();
 
         } catch (Exception e) {
-            throw new FileStorageException("Failed to generate presigned download URL", e);
+            throw new FileStorageException("Failed to generate presigned part URL", e);
         }
     }
 
+    @Override
+    public List<UploadedPart> listUploadedParts(String storagePath, String uploadId) {
+        try {
+            ListPartsRequest listRequest = ListPartsRequest.builder()
+                    .bucket(bucketName)
+                    .key(storagePath)
+                    .uploadId(uploadId)
+                    .build();
+
+            return s3Client.listPartsPaginator(listRequest).parts().stream()
+                    .map(part -> new UploadedPart(part.partNumber(), part.eTag()))
+                    .toList();
+
+        } catch (NoSuchUploadException e) {
+            throw new FileStorageException("Upload not found: " + uploadId);
+        } catch (S3Exception e) {
+            throw new FileStorageException("S3 error listing upload parts: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    @Override
+    public String completeMultipartUpload(String storagePath, String uploadId, List<UploadedPart> parts) {
+        try {
+            List<CompletedPart> completedParts = parts.stream()
+                    .sorted(Comparator.comparingInt(UploadedPart::partNumber))
+                    .map(part -> CompletedPart.builder().partNumber(part.partNumber()).eTag(part.eTag()).build())
+                    .toList();
+
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(storagePath)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+
+            // The multipart ETag and size are read by the next HEAD
+            metadataCache.invalidate(storagePath);
+
+            // S3 assembles whatever parts it is given, so a client that left parts out gets a shorter object
+            HeadObjectResponse assembled = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(storagePath)
+                    .build());
+            String declaredLength = assembled.metadata().get(DECLARED_LENGTH_METADATA);
+            if (declaredLength != null && Long.parseLong(declaredLength) != assembled.contentLength()) {
+                s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucketName).key(storagePath).build());
+                throw new IncompleteUploadException("Uploaded parts total " + assembled.contentLength() + " bytes but "
+                        + declaredLength + " were declared");
+            }
+            logger.info("Completed multipart upload to s3://{}/{} ({} parts)", bucketName, storagePath, parts.size());
+            return "/api/files/" + storagePath;
+
+        } catch (NoSuchUploadException e) {
+            throw new FileStorageException("Upload not found: " + uploadId);
+        } catch (S3Exception e) {
+            throw new FileStorageException("S3 error completing multipart upload: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String storagePath, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(storagePath)
+                    .uploadId(uploadId)
+                    .build());
+            logger.info("Aborted multipart upload to s3://{}/{}", bucketName, storagePath);
+
+        } catch (NoSuchUploadException e) {
+            // Already completed or aborted
+        } catch (S3Exception e) {
+            throw new FileStorageException("S3 error aborting multipart upload: " + e.awsErrorDetails().errorMessage(), e);
+        }
+    }
+
+    private FileMetadata headMetadata(String s3Key, String fileUrl) {
+        HeadObjectResponse response = s3Client.headObject(HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(s3Key)
+                .build());
+
+        String contentType = response.contentType() != null
+                ? response.contentType() : getContentTypeFromExtension(fileUrl);
+        return new FileMetadata(response.contentLength(), contentType, response.eTag(), response.lastModified());
+    }
+
+    private void cacheUploaded(String s3Key, long contentLength, String contentType, PutObjectResponse response) {
+        // S3 sets Last-Modified itself; it is filled in on the next HEAD after this entry expires
+        metadataCache.put(s3Key, new FileMetadata(contentLength, contentType, response.eTag(), null));
+    }
+
+    /**
+     * Cache the object's metadata from GET response headers. For ranged GETs the full size
+     * comes from Content-Range ("bytes 0-99/1234").
+     */
+    private void cacheFromGet(String s3Key, String fileUrl, GetObjectResponse response) {
+        Long contentLength = response.contentLength();
+        String contentRange = response.contentRange();
+        if (contentRange != null) {
+            String total = contentRange.substring(contentRange.indexOf('/') + 1);
+            if (total.equals("*")) {
+                return;
+            }
+            contentLength = Long.parseLong(total);
+        }
+        if (contentLength == null) {
+            return;
+        }
+
+        String contentType = response.contentType() != null
+                ? response.contentType() : getContentTypeFromExtension(fileUrl);
+        metadataCache.put(s3Key, new FileMetadata(contentLength, contentType, response.eTag(), response.lastModified()));
+    }
+
     private String getExtensionFromContentType(String contentType) {
         if (contentType == null) return "";
         switch (contentType.toLowerCase()) {
@@ -395,6 +731,11 @@ public class S3FileStorageService implements FileStorageService {
             }
         }
 
+        // Handle a bare key (e.g., "documents/2/invoices/file.pdf")
+        if (!fileUrl.startsWith("/") && !fileUrl.contains("://")) {
+            return fileUrl;
+        }
+
         return null;
     }
 
@@ -42,6 +42,7 @@ public class TaskService {
     private final PhaseRepository phaseRepository;
     private final UserRepository userRepository;
     private final AuditService auditService;
+    private final NotificationService notificationService;
     // private final TimeLogRepository timeLogRepository; // For handling related time entries
 
     @Autowired
@@ -49,13 +50,15 @@ public class TaskService {
                        ProjectRepository projectRepository,
                        PhaseRepository phaseRepository,
                        UserRepository userRepository,
-                       AuditService auditService
+                       AuditService auditService,
+                       NotificationService notificationService
             /*, TimeLogRepository timeLogRepository */) {
         this.taskRepository = taskRepository;
         this.projectRepository = projectRepository;
         this.phaseRepository = phaseRepository;
         this.userRepository = userRepository;
         this.auditService = auditService;
+        this.notificationService = notificationService;
         // this.timeLogRepository = timeLogRepository;
     }
 
@@ -130,6 +133,7 @@ public class TaskService {
 
         Task savedTask = taskRepository.save(newTask);
         auditService.logChange(reporter, "TASK", savedTask.getId(), "CREATE", null, null, "Task created");
+        notificationService.notifyTaskAssigned(savedTask, null, reporter);
         
         return savedTask;
     }
@@ -191,6 +195,7 @@ public class TaskService {
         
         // createdAt and updatedAt are handled by @PrePersist in Task entity
         auditService.logChange(reporter, "TASK", savedTask.getId(), "CREATE", null, null, "Task created");
+        notificationService.notifyTaskAssigned(savedTask, null, reporter);
         
         return savedTask;
     }
@@ -519,6 +524,7 @@ public class TaskService {
                 .orElseThrow(() -> new IllegalArgumentException("Task with ID " + taskId + " not found."));
 
         boolean updated = false;
+        Long previousAssigneeId = taskToUpdate.getAssignee() != null ? taskToUpdate.getAssignee().getId() : null;
 
         if (newNameOpt.isPresent()) {
             String nameValue = newNameOpt.get().trim();
@@ -590,7 +596,11 @@ public class TaskService {
 
         if (updated) {
             // updatedAt is handled by @PreUpdate in Task entity
-            return Optional.of(taskRepository.save(taskToUpdate));
+            Task savedTask = taskRepository.save(taskToUpdate);
+            if (newAssigneeIdOpt.isPresent()) {
+                notificationService.notifyTaskAssigned(savedTask, previousAssigneeId, getCurrentAuthenticatedUser());
+            }
+            return Optional.of(savedTask);
         }
         // Return the task even if no fields were changed, or Optional.empty() if you prefer
         return Optional.of(taskToUpdate);
@@ -740,6 +750,7 @@ public class TaskService {
         }
 
         // Handle assignee
+        Long previousAssigneeId = taskToUpdate.getAssignee() != null ? taskToUpdate.getAssignee().getId() : null;
         if (assigneeId != null) {
             User assignee = userRepository.findById(assigneeId)
                     .orElseThrow(() -> new IllegalArgumentException("User with ID " + assigneeId + " not found."));
@@ -766,7 +777,9 @@ public class TaskService {
         }
 
         // updatedAt is handled by @PreUpdate in Task entity
-        return taskRepository.save(taskToUpdate);
+        Task savedTask = taskRepository.save(taskToUpdate);
+        notificationService.notifyTaskAssigned(savedTask, previousAssigneeId, currentUser);
+        return savedTask;
     }
 
     @Transactional
@@ -1,6 +1,7 @@
 package org.example.service; // Or org.example.service if you placed it there
 
-import org.example.models.Role; // Make sure this import is present if not already
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.example.models.User;
 import org.example.repository.UserRepository;
 import org.slf4j.Logger; // Import SLF4J Logger
@@ -12,83 +13,135 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService; // Ensure this is the correct import
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.HashSet;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Loads users for Spring Security.
+ *
+ * Each user's password, enabled flag and authorities are cached by normalized username, so a
+ * login on a warm cache does no database work. Code that changes a user's password, enabled
+ * flag or roles must call {@link #evict(String)}; code that changes a role's permissions must
+ * call {@link #evictAll()}. Entries also expire on their own as a backstop for changes made
+ * outside the application.
+ */
 @Service
 public class UserDetailsServiceImpl implements UserDetailsService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserDetailsServiceImpl.class); // Add logger
 
     private final UserRepository userRepository;
+    private final TransactionTemplate readOnlyTransaction;
+
+    // Not-found usernames are not cached, so a user created after a failed login can sign in at once
+    private final Cache<String, CachedUser> users = Caffeine.newBuilder()
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .maximumSize(10_000)
+            .build();
 
     @Autowired
-    public UserDetailsServiceImpl(UserRepository userRepository) {
+    public UserDetailsServiceImpl(UserRepository userRepository, PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
     @Override
-    @Transactional(readOnly = true)
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        // System.out.println("!!! UserDetailsServiceImpl.loadUserByUsername CALLED with username: " + username + " !!!"); // Temporary test
-        logger.info("Attempting to load user by username: {}", username); // Log attempt
-
         // Normalize the username to ensure consistent lookup regardless of casing
-        String normalizedUsername = username.trim().toLowerCase();
-        User user = userRepository.findByUsername(normalizedUsername)
-                .orElseThrow(() -> {
-                    logger.warn("User not found with username: {}", normalizedUsername); // Log if not found
-                    return new UsernameNotFoundException("User not found with username: " + normalizedUsername);
-                });
-
-        logger.info("User found: {}. Enabled: {}. Password (encoded): {}",
-                user.getUsername(), user.isEnabled(), user.getPassword() != null ? "[PRESENT]" : "[NULL_OR_EMPTY]");
-        // Be careful not to log the actual encoded password in production for too long,
-        // but "[PRESENT]" or its length can be useful for debugging.
-
-        if (user.getPassword() == null || user.getPassword().isEmpty()) {
-            logger.error("User {} has a null or empty password in the database!", user.getUsername());
-            // This would definitely cause authentication failure.
-            // Spring Security expects a non-null encoded password.
-            throw new UsernameNotFoundException("User account is misconfigured (no password): " + username);
+        String normalizedUsername = normalize(username);
+        CachedUser cached = users.get(normalizedUsername, this::load);
+
+        // A fresh instance each time: the authentication manager erases credentials on the one it returns
+        return new org.springframework.security.core.userdetails.User(
+                cached.username(),
+                cached.password(), // This MUST be the encoded password from your database
+                cached.enabled(),
+                true, // accountNonExpired
+                true, // credentialsNonExpired
+                true, // accountNonLocked
+                cached.authorities());
+    }
+
+    /**
+     * Drop the cached details for one user once the current transaction commits, or at once if
+     * there is none. Call after changing the user's password, enabled flag or roles.
+     */
+    public void evict(String username) {
+        if (username == null) {
+            return;
         }
+        String key = normalize(username);
+        afterCommit(() -> users.invalidate(key));
+    }
+
+    /**
+     * Drop every cached user once the current transaction commits. Call after changing the
+     * permissions of a role, which may be held by any number of users.
+     */
+    public void evictAll() {
+        afterCommit(users::invalidateAll);
+    }
+
+    private CachedUser load(String normalizedUsername) {
+        logger.debug("Loading user by username: {}", normalizedUsername);
 
-        // --- The Key Change is Here ---
-        // Assuming your Role entity has a getName() method that returns the role string (e.g., "ROLE_USER")
-        Set<GrantedAuthority> authorities = new java.util.HashSet<>();
-        
-        user.getRoles().forEach(role -> {
-            logger.debug("Mapping role: {} for user: {}", role.getName(), username);
-            authorities.add(new SimpleGrantedAuthority(role.getName()));
-            
-            // Map permissions associated with this role
-            if (role.getPermissions() != null) {
-                role.getPermissions().forEach(permission -> {
-                     logger.debug("Mapping permission: {} for role: {}", permission.getName(), role.getName());
-                     authorities.add(new SimpleGrantedAuthority(permission.getName()));
-                });
+        return readOnlyTransaction.execute(status -> {
+            User user = userRepository.findByUsername(normalizedUsername)
+                    .orElseThrow(() -> {
+                        logger.warn("User not found with username: {}", normalizedUsername); // Log if not found
+                        return new UsernameNotFoundException("User not found with username: " + normalizedUsername);
+                    });
+
+            if (user.getPassword() == null || user.getPassword().isEmpty()) {
+                logger.error("User {} has a null or empty password in the database!", user.getUsername());
+                // Spring Security expects a non-null encoded password.
+                throw new UsernameNotFoundException("User account is misconfigured (no password): " + normalizedUsername);
+            }
+
+            // Roles and the permissions granted through them both become authorities
+            Set<GrantedAuthority> authorities = new HashSet<>();
+            user.getRoles().forEach(role -> {
+                authorities.add(new SimpleGrantedAuthority(role.getName()));
+                if (role.getPermissions() != null) {
+                    role.getPermissions().forEach(permission ->
+                            authorities.add(new SimpleGrantedAuthority(permission.getName())));
+                }
+            });
+
+            if (authorities.isEmpty()) {
+                logger.warn("User {} has no roles assigned. This might be intended or an issue depending on security configuration.", normalizedUsername);
+            } else {
+                logger.debug("User {} has {} authorities", normalizedUsername, authorities.size());
             }
+
+            return new CachedUser(user.getUsername(), user.getPassword(), user.isEnabled(), Set.copyOf(authorities));
         });
+    }
 
-        if (authorities.isEmpty()) {
-            logger.warn("User {} has no roles assigned. This might be intended or an issue depending on security configuration.", username);
-            // Depending on your security rules, this might be an issue,
-            // but usually doesn't directly cause "Invalid username/password"
-            // unless authorization rules prevent login without roles.
+    private void afterCommit(Runnable invalidation) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
         } else {
-            logger.info("User {} has authorities: {}", username, authorities);
+            invalidation.run();
         }
+    }
 
+    private static String normalize(String username) {
+        return username.trim().toLowerCase();
+    }
 
-        return new org.springframework.security.core.userdetails.User(
-                user.getUsername(),
-                user.getPassword(), // This MUST be the encoded password from your database
-                user.isEnabled(),
-                true, // accountNonExpired
-                true, // credentialsNonExpired
-                true, // accountNonLocked
-                authorities);
+    private record CachedUser(String username, String password, boolean enabled, Set<GrantedAuthority> authorities) {
     }
-}
\ No newline at end of file
+}
@@ -27,12 +27,15 @@ public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final RoleRepository roleRepository; // Inject RoleRepository
+    private final UserDetailsServiceImpl userDetailsService;
 
     @Autowired
     public UserService(UserRepository userRepository,
                        PasswordEncoder passwordEncoder,
-                       RoleRepository roleRepository) {
+                       RoleRepository roleRepository,
+                       UserDetailsServiceImpl userDetailsService) {
         this.userRepository = userRepository;
+        this.userDetailsService = userDetailsService;
         this.passwordEncoder = passwordEncoder;
         this.roleRepository = roleRepository;
     }
@@ -298,6 +301,7 @@ public class UserService {
         boolean alreadyAdmin = user.getRoles().stream().anyMatch(role -> "ROLE_ADMIN".equals(role.getName()));
         if (!alreadyAdmin) {
             user.getRoles().add(adminRole);
+            userDetailsService.evict(user.getUsername());
             return userRepository.save(user);
         }
         return user; // User was already an admin or no change needed
@@ -324,6 +328,7 @@ public class UserService {
                 .orElseThrow(() -> new IllegalArgumentException("User not found with ID: " + userId));
 
         user.setPassword(passwordEncoder.encode(newPassword.trim()));
+        userDetailsService.evict(user.getUsername());
         return userRepository.save(user);
     }
 
@@ -341,6 +346,7 @@ public class UserService {
                 .orElseThrow(() -> new IllegalArgumentException("User not found with ID: " + userId));
 
         user.setEnabled(enabled);
+        userDetailsService.evict(user.getUsername());
         return userRepository.save(user);
     }
 
@@ -412,6 +418,8 @@ public class UserService {
      */
     @Transactional
     public User save(User user) {
+        // Callers may have changed anything on the user, roles included
+        userDetailsService.evict(user.getUsername());
         return userRepository.save(user);
     }
 
@@ -437,6 +445,7 @@ public class UserService {
         user.getRoles().add(role);
         
         userRepository.save(user);
+        userDetailsService.evict(user.getUsername());
     }
 
     // Optional: Custom exception for role not found
@@ -0,0 +1,221 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.example.models.Organization;
+import org.example.models.OrganizationHoliday;
+import org.example.repository.OrganizationHolidayRepository;
+import org.example.repository.OrganizationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Working-day calendar per organization: weekdays that are not organization holidays.
+ *
+ * Each (organization, year) is built once into a bitset of working days plus prefix counts,
+ * so counting working days between two dates and adding working days to a date are constant
+ * time per calendar year spanned. Calendars are cached and dropped when the organization's
+ * holidays for that year change.
+ */
+@Service
+public class WorkingDayCalendarService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkingDayCalendarService.class);
+
+    private final OrganizationHolidayRepository holidayRepository;
+    private final OrganizationRepository organizationRepository;
+
+    private final Cache<CalendarKey, YearCalendar> calendars = Caffeine.newBuilder()
+            .expireAfterAccess(12, TimeUnit.HOURS)
+            .maximumSize(5000)
+            .build();
+
+    @Autowired
+    public WorkingDayCalendarService(OrganizationHolidayRepository holidayRepository,
+                                     OrganizationRepository organizationRepository) {
+        this.holidayRepository = holidayRepository;
+        this.organizationRepository = organizationRepository;
+    }
+
+    /**
+     * Whether the date is a working day for the organization.
+     */
+    public boolean isWorkingDay(Long organizationId, LocalDate date) {
+        return calendar(organizationId, date.getYear()).isWorkingDay(date.getDayOfYear() - 1);
+    }
+
+    /**
+     * Count working days from startDate to endDate, both inclusive. Returns 0 if endDate is before startDate.
+     */
+    public long countWorkingDays(Long organizationId, LocalDate startDate, LocalDate endDate) {
+        if (endDate.isBefore(startDate)) {
+            return 0;
+        }
+        long count = 0;
+        for (int year = startDate.getYear(); year <= endDate.getYear(); year++) {
+            YearCalendar calendar = calendar(organizationId, year);
+            int from = year == startDate.getYear() ? startDate.getDayOfYear() - 1 : 0;
+            int to = year == endDate.getYear() ? endDate.getDayOfYear() - 1 : calendar.length() - 1;
+            count += calendar.countBetween(from, to);
+        }
+        return count;
+    }
+
+    /**
+     * The date that is the given number of working days after date (date itself is not counted).
+     * Adding 0 returns the date unchanged.
+     */
+    public LocalDate addWorkingDays(Long organizationId, LocalDate date, int workingDays) {
+        if (workingDays < 0) {
+            throw new IllegalArgumentException("Working days to add must not be negative");
+        }
+        if (workingDays == 0) {
+            return date;
+        }
+
+        int year = date.getYear();
+        YearCalendar calendar = calendar(organizationId, year);
+        // Working days up to and including the start date, plus the ones to add
+        int target = calendar.countBetween(0, date.getDayOfYear() - 1) + workingDays;
+        while (target > calendar.total()) {
+            target -= calendar.total();
+            year++;
+            calendar = calendar(organizationId, year);
+        }
+        return LocalDate.ofYearDay(year, calendar.dayOfNthWorkingDay(target) + 1);
+    }
+
+    @Transactional(readOnly = true)
+    public List<OrganizationHoliday> getHolidays(Long organizationId, int year) {
+        return holidayRepository.findByOrganization_IdAndHolidayDateBetweenOrderByHolidayDate(
+                organizationId, LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+    }
+
+    @Transactional
+    public OrganizationHoliday addHoliday(Long organizationId, LocalDate date, String name) {
+        if (date == null) {
+            throw new IllegalArgumentException("Holiday date is required");
+        }
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Holiday name is required");
+        }
+        if (holidayRepository.existsByOrganization_IdAndHolidayDate(organizationId, date)) {
+            throw new IllegalStateException("A holiday already exists on " + date);
+        }
+        Organization organization = organizationRepository.findById(organizationId)
+                .orElseThrow(() -> new IllegalArgumentException("Organization not found"));
+
+        OrganizationHoliday holiday = holidayRepository.save(new OrganizationHoliday(organization, date, name.trim()));
+        invalidateAfterCommit(organizationId, date.getYear());
+        return holiday;
+    }
+
+    @Transactional
+    public void deleteHoliday(Long organizationId, Long holidayId) {
+        OrganizationHoliday holiday = holidayRepository.findByIdAndOrganization_Id(holidayId, organizationId)
+                .orElseThrow(() -> new IllegalArgumentException("Holiday not found"));
+        holidayRepository.delete(holiday);
+        invalidateAfterCommit(organizationId, holiday.getHolidayDate().getYear());
+    }
+
+    private YearCalendar calendar(Long organizationId, int year) {
+        return calendars.get(new CalendarKey(organizationId, year), this::build);
+    }
+
+    private YearCalendar build(CalendarKey key) {
+        LocalDate first = LocalDate.of(key.year(), 1, 1);
+        int length = Year.of(key.year()).length();
+
+        BitSet working = new BitSet(length);
+        for (int day = 0; day < length; day++) {
+            DayOfWeek dayOfWeek = first.plusDays(day).getDayOfWeek();
+            if (dayOfWeek != DayOfWeek.SATURDAY && dayOfWeek != DayOfWeek.SUNDAY) {
+                working.set(day);
+            }
+        }
+        if (key.organizationId() != null) {
+            for (LocalDate holiday : holidayRepository.findHolidayDates(
+                    key.organizationId(), first, LocalDate.of(key.year(), 12, 31))) {
+                working.clear(holiday.getDayOfYear() - 1);
+            }
+        }
+
+        logger.debug("Built working-day calendar for organization {} year {}", key.organizationId(), key.year());
+        return new YearCalendar(working, length);
+    }
+
+    private void invalidateAfterCommit(Long organizationId, int year) {
+        CalendarKey key = new CalendarKey(organizationId, year);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    calendars.invalidate(key);
+                }
+            });
+        } else {
+            calendars.invalidate(key);
+        }
+    }
+
+    private record CalendarKey(Long organizationId, int year) {
+    }
+
+    /**
+     * One year of working days. Day indexes are zero-based day-of-year.
+     */
+    private static final class YearCalendar {
+        private final BitSet working;
+        private final int length;
+        // workingBefore[i] = number of working days among days [0, i)
+        private final int[] workingBefore;
+        // nthWorkingDay[k] = day index of the (k + 1)-th working day
+        private final int[] nthWorkingDay;
+
+        YearCalendar(BitSet working, int length) {
+            this.working = working;
+            this.length = length;
+            this.workingBefore = new int[length + 1];
+            this.nthWorkingDay = new int[working.cardinality()];
+            for (int day = 0; day < length; day++) {
+                boolean isWorking = working.get(day);
+                workingBefore[day + 1] = workingBefore[day] + (isWorking ? 1 : 0);
+                if (isWorking) {
+                    nthWorkingDay[workingBefore[day]] = day;
+                }
+            }
+        }
+
+        int length() {
+            return length;
+        }
+
+        int total() {
+            return nthWorkingDay.length;
+        }
+
+        boolean isWorkingDay(int day) {
+            return working.get(day);
+        }
+
+        int countBetween(int fromDay, int toDay) {
+            return workingBefore[toDay + 1] - workingBefore[fromDay];
+        }
+
+        int dayOfNthWorkingDay(int n) {
+            return nthWorkingDay[n - 1];
+        }
+    }
+}